@@ -13,6 +13,9 @@ public class BuoyancyEngine
     //Instance Variables
     double extensionCoefficient;
 
+    private HardwareInterface hardware;
+    private int engineIndex;
+
 
     /***************************************************************************
      * No Argument Constructor
@@ -24,6 +27,19 @@ public class BuoyancyEngine
         this.extensionCoefficient = 0.5;
     }
 
+    /***************************************************************************
+     * Hardware Constructor
+     *
+     * Every extension change is sent to the given engine of the hardware
+     **************************************************************************/
+    BuoyancyEngine(HardwareInterface hardware, int engineIndex)
+    {
+        this.extensionCoefficient = 0.5;
+
+        this.hardware = hardware;
+        this.engineIndex = engineIndex;
+    }
+
     /***************************************************************************
      * Sink
      *
@@ -33,6 +49,8 @@ public class BuoyancyEngine
     {
         if(this.extensionCoefficient >= EXTENSION_DELTA)
             this.extensionCoefficient -= EXTENSION_DELTA;
+
+        this.sendToHardware();
     }
 
     /***************************************************************************
@@ -46,6 +64,34 @@ public class BuoyancyEngine
         {
             this.extensionCoefficient += EXTENSION_DELTA;
         }
+
+        this.sendToHardware();
+    }
+
+    /***************************************************************************
+     * sendToHardware
+     *
+     * Commands the hardware and keeps the extension it reports back
+     **************************************************************************/
+    private void sendToHardware()
+    {
+        if(hardware != null)
+        {
+            this.setExtensionCoefficient(
+                    hardware.setExtension(engineIndex, extensionCoefficient));
+        }
+    }
+
+    /***************************************************************************
+     * Appends the engine settings to the given builder as name=value lines.
+     * Used to identify a mission definition.
+     **************************************************************************/
+    public void appendDefinition(StringBuilder definition)
+    {
+        definition.append("EXTENSION_DELTA=").append(EXTENSION_DELTA)
+                .append('\n');
+        definition.append("extensionCoefficient=")
+                .append(getExtensionCoefficient()).append('\n');
     }
 
     /***************************************************************************
@@ -58,6 +104,16 @@ public class BuoyancyEngine
         return this.extensionCoefficient;
     }
 
+    /***************************************************************************
+     * Setter - Set Extension Coefficient
+     *
+     *
+     **************************************************************************/
+    public synchronized void setExtensionCoefficient(double extensionCoefficient)
+    {
+        this.extensionCoefficient = extensionCoefficient;
+    }
+
 
 
 }
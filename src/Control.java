@@ -17,6 +17,20 @@ public class Control implements Runnable
     public final double TARGET_DESCENT_RATE = 0.1; //meters per second
     public final double TARGET_ASCENT_RATE = 0.1; //meters per second
 
+    //Control modes, the decision taken in the last cycle
+    public static final byte MODE_IDLE = 0;
+    public static final byte MODE_SINK = 1;
+    public static final byte MODE_OVERSPEED_ASCEND = 2;
+    public static final byte MODE_AT_DEPTH_ASCEND = 3;
+    public static final byte MODE_RISING_SINK = 4;
+    public static final byte MODE_POLICY_SINK = 5;
+    public static final byte MODE_POLICY_HOLD = 6;
+    public static final byte MODE_POLICY_ASCEND = 7;
+
+    public static final String[] MODE_NAMES = {"None", "Sink",
+            "Overspeed Ascend", "At Depth Ascend", "Rising Sink",
+            "Policy Sink", "Policy Hold", "Policy Ascend"};
+
     //Instance Variables
     private BuoyancyEngine[] buoyancyEngines;
     private DepthSensor depthSensor;
@@ -29,6 +43,12 @@ public class Control implements Runnable
     private long targetDepth;
     private boolean depthReached;
 
+    private PolicyTable policy;
+    private double lastPolicyDepth;
+    private long lastPolicyNanoTime;
+
+    private volatile byte mode;
+
     /***************************************************************************
      * Run Method
      *
@@ -41,16 +61,21 @@ public class Control implements Runnable
 
             //__________________________________________________________________
             //Section 1: Retrieving Information
+            ControlCycleEvent event = new ControlCycleEvent();
+            event.begin();
+
             long elapsedTime = getElapsedTime();
 
             double elapsedTimeSeconds = elapsedTime / 1000.0;
 
-            double currentDepth = this.depthSensor.getDepth(simulator);
+            double currentDepth = this.readDepth();
 
             double currentSpeed = getSpeed(currentDepth, elapsedTimeSeconds);
 
             boolean sinking = this.isSinking(currentDepth);
 
+            double policyVelocity = this.getPolicyVelocity(currentDepth);
+
 
             //__________________________________________________________________
             //Section 2: Do Logic
@@ -67,7 +92,14 @@ public class Control implements Runnable
                     && !sinking);
 
 
-            if(elapsedTime > ENGINE_UPDATE_INTERVAL)
+            byte decision = MODE_IDLE;
+            boolean decisionCycle = elapsedTime > ENGINE_UPDATE_INTERVAL;
+
+            if(policy != null && decisionCycle)
+            {
+                decision = this.applyPolicy(currentDepth, policyVelocity);
+            }
+            else if(decisionCycle)
             {
                 for(int i = 0; i < 1; i++)
                 {
@@ -75,25 +107,45 @@ public class Control implements Runnable
                     {
                         buoyancyEngines[i].sink();
                         System.out.println("Sink! | Speed: " + currentSpeed);
+                        decision = MODE_SINK;
                     }
                     if(!depthReached && overspeedDescent)
                     {
                         buoyancyEngines[i].ascend();
                         System.out.println("Overspeed, Ascend! | Speed: " + currentSpeed);
+                        decision = MODE_OVERSPEED_ASCEND;
                     }
 
                     if(depthReached && !overspeedAscent)
                     {
                         buoyancyEngines[i].ascend();
                         System.out.println("At depth, Ascend!");
+                        decision = MODE_AT_DEPTH_ASCEND;
                     }
                     if(depthReached && overspeedAscent)
                     {
                         buoyancyEngines[i].sink();
                         System.out.println("Rising too fast, Sink!");
+                        decision = MODE_RISING_SINK;
                     }
                 }
             }
+
+            //Skipped cycles keep the last decision
+            if(decisionCycle)
+                this.mode = decision;
+
+            event.end();
+
+            if(event.shouldCommit())
+            {
+                event.action = MODE_NAMES[decision];
+                event.speed = currentSpeed;
+                event.depth = currentDepth;
+                event.depthReached = depthReached;
+                event.commit();
+            }
+
             //__________________________________________________________________
             //Section 3: Sleep for a bit
             try
@@ -106,6 +158,64 @@ public class Control implements Runnable
         }
     }
 
+    /***************************************************************************
+     * applyPolicy
+     *
+     * Looks up the precompiled action for the current state and applies it
+     * to the same engine the branch logic drives. Returns the mode.
+     **************************************************************************/
+    private byte applyPolicy(double currentDepth, double velocity)
+    {
+        byte action = policy.lookup(currentDepth, velocity,
+                buoyancyEngines[0].getExtensionCoefficient(), targetDepth);
+
+        if(action == PolicyTable.ACTION_SINK)
+        {
+            buoyancyEngines[0].sink();
+            return MODE_POLICY_SINK;
+        }
+        if(action == PolicyTable.ACTION_ASCEND)
+        {
+            buoyancyEngines[0].ascend();
+            return MODE_POLICY_ASCEND;
+        }
+
+        return MODE_POLICY_HOLD;
+    }
+
+    /***************************************************************************
+     * getPolicyVelocity
+     *
+     * Vertical velocity (m/s, positive is sinking) since the previous cycle.
+     * Sampled every cycle, including the ones that don't decide, and divided
+     * by the real time between the samples.
+     **************************************************************************/
+    private double getPolicyVelocity(double currentDepth)
+    {
+        long currentNanoTime = System.nanoTime();
+
+        double velocity = (currentDepth - lastPolicyDepth)
+                / ((currentNanoTime - lastPolicyNanoTime) / 1e9);
+
+        this.lastPolicyDepth = currentDepth;
+        this.lastPolicyNanoTime = currentNanoTime;
+
+        return velocity;
+    }
+
+    /***************************************************************************
+     * readDepth
+     *
+     * Reads the simulated depth, or the hardware when there is no Simulator
+     **************************************************************************/
+    private double readDepth()
+    {
+        if(simulator == null)
+            return this.depthSensor.getDepth();
+
+        return this.depthSensor.getDepth(simulator);
+    }
+
     /***************************************************************************
      * getSpeed
      **************************************************************************/
@@ -140,6 +250,54 @@ public class Control implements Runnable
     }
 
 
+    /***************************************************************************
+     * appendDefinition
+     *
+     * Appends the control parameters and the settings of every buoyancy
+     * engine to the given builder as name=value lines.
+     **************************************************************************/
+    public void appendDefinition(StringBuilder definition)
+    {
+        definition.append("NUMBER_OF_ENGINES=").append(NUMBER_OF_ENGINES)
+                .append('\n');
+        definition.append("ENGINE_UPDATE_INTERVAL=")
+                .append(ENGINE_UPDATE_INTERVAL).append('\n');
+        definition.append("TARGET_DESCENT_RATE=").append(TARGET_DESCENT_RATE)
+                .append('\n');
+        definition.append("TARGET_ASCENT_RATE=").append(TARGET_ASCENT_RATE)
+                .append('\n');
+        definition.append("targetDepth=").append(targetDepth).append('\n');
+
+        if(policy == null)
+            definition.append("POLICY=none\n");
+        else
+            policy.appendDefinition(definition);
+
+        for(int i = 0; i < buoyancyEngines.length; i++)
+        {
+            definition.append("engine ").append(i).append('\n');
+            buoyancyEngines[i].appendDefinition(definition);
+        }
+    }
+
+    /***************************************************************************
+     * Getter - the mode chosen in the last decision cycle, one of MODE_*
+     **************************************************************************/
+    public byte getMode()
+    {
+        return this.mode;
+    }
+
+    /***************************************************************************
+     * Setter - uses a precompiled policy table instead of the branch logic.
+     * The policy holds the target depth.
+     **************************************************************************/
+    public void setPolicy(PolicyTable policy)
+    {
+        this.policy = policy;
+        this.lastPolicyNanoTime = System.nanoTime();
+    }
+
     /***************************************************************************
      * Control Constructor
      **************************************************************************/
@@ -188,5 +346,26 @@ public class Control implements Runnable
         this.simulator.setDepthSensor(depthSensor);
     }
 
+    /***************************************************************************
+     * Control Constructor - Hardware Overload
+     **************************************************************************/
+    public Control(HardwareInterface hardware)
+    {
+        this.lastNanoTime = System.nanoTime();
+
+        this.buoyancyEngines = new BuoyancyEngine[NUMBER_OF_ENGINES];
+
+        for(int i = 0; i < buoyancyEngines.length; i++)
+        {
+            buoyancyEngines[i] = new BuoyancyEngine(hardware, i);
+        }
+
+        this.depthSensor = new DepthSensor(hardware);
+
+
+        this.targetDepth = 60;
+        this.depthReached = false;
+    }
+
 
 }
@@ -0,0 +1,33 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/***************************************************************************
+ * Control Cycle Event
+ *
+ * Flight Recorder event covering one decision cycle of Control.run(), not
+ * including the sleep. Disabled by default, enable it with jellyfish.jfc.
+ **************************************************************************/
+@Name("jellyfish.ControlCycle")
+@Label("Control Cycle")
+@Category("Jellyfish")
+@Description("One decision cycle of the Control system")
+@Enabled(false)
+@StackTrace(false)
+public class ControlCycleEvent extends jdk.jfr.Event
+{
+    @Label("Action")
+    String action;
+
+    @Label("Speed (m/s)")
+    double speed;
+
+    @Label("Depth (m)")
+    double depth;
+
+    @Label("Depth Reached")
+    boolean depthReached;
+}
@@ -4,18 +4,47 @@
 public class DepthSensor
 {
 
+    private HardwareInterface hardware;
+
     /***************************************************************************
      * Depth Sensor Constructor
      **************************************************************************/
     public DepthSensor()
     {}
 
+    /***************************************************************************
+     * Depth Sensor Constructor - Hardware Overload
+     **************************************************************************/
+    public DepthSensor(HardwareInterface hardware)
+    {
+        this.hardware = hardware;
+    }
+
     /***************************************************************************
      * getDepth()
+     *
+     * Reads the hardware if there is one, 0.0 otherwise
      **************************************************************************/
     public double getDepth()
     {
-        return 0.0;
+        SensorReadEvent event = new SensorReadEvent();
+        event.begin();
+
+        double depth = 0.0;
+
+        if(hardware != null)
+            depth = hardware.readDepth();
+
+        event.end();
+
+        if(event.shouldCommit())
+        {
+            event.source = (hardware == null) ? "None" : "Hardware";
+            event.depth = depth;
+            event.commit();
+        }
+
+        return depth;
     }
 
     /***************************************************************************
@@ -23,7 +52,21 @@ public class DepthSensor
      **************************************************************************/
     public double getDepth(Simulator simulator)
     {
-        return simulator.getDepthReading();
+        SensorReadEvent event = new SensorReadEvent();
+        event.begin();
+
+        double depth = simulator.getDepthReading();
+
+        event.end();
+
+        if(event.shouldCommit())
+        {
+            event.source = "Simulator";
+            event.depth = depth;
+            event.commit();
+        }
+
+        return depth;
     }
 
 
@@ -0,0 +1,183 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/***************************************************************************
+ * Flight Recording Report Class
+ *
+ * Summarizes the latency distribution of every Jellyfish event type in a
+ * Flight Recorder file, plus the actions chosen by the Control system and
+ * the amount of data flushed by the Recorder.
+ *
+ * Usage: java FlightRecordingReport <recording.jfr>
+ **************************************************************************/
+public class FlightRecordingReport
+{
+    //Constants
+    private static final String EVENT_PREFIX = "jellyfish.";
+
+    //Instance Variables
+    private TreeMap<String, long[]> durations; //Nanoseconds, per event type
+    private TreeMap<String, Integer> durationCounts;
+
+    private TreeMap<String, Long> controlActions;
+
+    private long flushedLines;
+    private long flushedBytes;
+
+    /***************************************************************************
+     * Flight Recording Report Constructor
+     **************************************************************************/
+    public FlightRecordingReport()
+    {
+        this.durations = new TreeMap<>();
+        this.durationCounts = new TreeMap<>();
+        this.controlActions = new TreeMap<>();
+    }
+
+    /***************************************************************************
+     * read
+     **************************************************************************/
+    public void read(Path recording) throws IOException
+    {
+        try(RecordingFile file = new RecordingFile(recording))
+        {
+            while(file.hasMoreEvents())
+            {
+                RecordedEvent event = file.readEvent();
+                String name = event.getEventType().getName();
+
+                if(!name.startsWith(EVENT_PREFIX))
+                    continue;
+
+                addDuration(name.substring(EVENT_PREFIX.length()),
+                        event.getDuration().toNanos());
+
+                if(name.equals("jellyfish.ControlCycle"))
+                {
+                    controlActions.merge(event.getString("action"), 1L,
+                            Long::sum);
+                }
+                else if(name.equals("jellyfish.RecorderFlush"))
+                {
+                    flushedLines += event.getInt("lines");
+                    flushedBytes += event.getLong("bytes");
+                }
+            }
+        }
+    }
+
+    /***************************************************************************
+     * addDuration
+     **************************************************************************/
+    private void addDuration(String type, long duration)
+    {
+        long[] values = durations.get(type);
+        int count = durationCounts.getOrDefault(type, 0);
+
+        if(values == null)
+        {
+            values = new long[1024];
+        }
+        else if(count == values.length)
+        {
+            values = Arrays.copyOf(values, count * 2);
+        }
+
+        values[count] = duration;
+
+        durations.put(type, values);
+        durationCounts.put(type, count + 1);
+    }
+
+    /***************************************************************************
+     * printReport
+     **************************************************************************/
+    public void printReport()
+    {
+        if(durations.isEmpty())
+        {
+            System.out.println("No Jellyfish events found, was the recording "
+                    + "made with jellyfish.jfc?");
+            return;
+        }
+
+        System.out.println("Event, Count, Min (us), P50 (us), P90 (us), "
+                + "P99 (us), Max (us), Mean (us)");
+
+        for(Map.Entry<String, long[]> entry : durations.entrySet())
+        {
+            int count = durationCounts.get(entry.getKey());
+            long[] values = entry.getValue();
+
+            Arrays.sort(values, 0, count);
+
+            double sum = 0;
+
+            for(int i = 0; i < count; i++)
+            {
+                sum += values[i];
+            }
+
+            System.out.println(entry.getKey() + ", " + count
+                    + ", " + values[0] / 1000.0
+                    + ", " + percentile(values, count, 0.50) / 1000.0
+                    + ", " + percentile(values, count, 0.90) / 1000.0
+                    + ", " + percentile(values, count, 0.99) / 1000.0
+                    + ", " + values[count - 1] / 1000.0
+                    + ", " + sum / count / 1000.0);
+        }
+
+        if(!controlActions.isEmpty())
+        {
+            System.out.println();
+            System.out.println("Control Action, Count");
+
+            for(Map.Entry<String, Long> entry : controlActions.entrySet())
+            {
+                System.out.println(entry.getKey() + ", " + entry.getValue());
+            }
+        }
+
+        if(flushedLines > 0)
+        {
+            System.out.println();
+            System.out.println("Recorder Lines Flushed: " + flushedLines);
+            System.out.println("Recorder Bytes Flushed: " + flushedBytes);
+        }
+    }
+
+    /***************************************************************************
+     * percentile - nearest rank on a sorted array
+     **************************************************************************/
+    private static long percentile(long[] sorted, int count, double fraction)
+    {
+        int rank = (int) Math.ceil(fraction * count) - 1;
+
+        return sorted[Math.max(0, Math.min(count - 1, rank))];
+    }
+
+
+    /***************************************************************************
+     * System main
+     **************************************************************************/
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 1)
+        {
+            System.out.println("Usage: java FlightRecordingReport "
+                    + "<recording.jfr>");
+            return;
+        }
+
+        FlightRecordingReport report = new FlightRecordingReport();
+        report.read(Paths.get(args[0]));
+        report.printReport();
+    }
+}
@@ -0,0 +1,26 @@
+/***************************************************************************
+ * Hardware Interface
+ *
+ * Abstraction over the physical sensors and actuators of the profiler. The
+ * DepthSensor and BuoyancyEngine classes talk to the hardware through this
+ * interface when they are given one, otherwise they fall back to their
+ * Simulator behaviour.
+ **************************************************************************/
+public interface HardwareInterface
+{
+    /***************************************************************************
+     * Reads the current depth in meters
+     **************************************************************************/
+    double readDepth();
+
+    /***************************************************************************
+     * Commands a buoyancy engine to the given extension coefficient and
+     * returns the extension the device reports back
+     **************************************************************************/
+    double setExtension(int engine, double extensionCoefficient);
+
+    /***************************************************************************
+     * Releases the connection to the hardware
+     **************************************************************************/
+    void close();
+}
@@ -0,0 +1,237 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+
+/***************************************************************************
+ * Hardware Stand-In Class
+ *
+ * Local stand-in for the device process used to test the
+ * UdpHardwareDriver. The physical plant is a Simulator running on its own
+ * thread; depth requests are answered from it and extension commands are
+ * applied to its buoyancy engines.
+ **************************************************************************/
+public class HardwareStandIn implements Runnable
+{
+    //Constants
+    public final boolean DEBUG = true;
+    public final int NUMBER_OF_ENGINES = 3;
+
+    //Instance Variables
+    private DatagramChannel channel;
+
+    private ByteBuffer receiveBuffer;
+    private ByteBuffer sendBuffer;
+
+    private Simulator simulator;
+    private BuoyancyEngine[] buoyancyEngines;
+
+    private volatile boolean running;
+
+    /***************************************************************************
+     * Hardware Stand-In Constructor
+     **************************************************************************/
+    public HardwareStandIn(int port) throws IOException
+    {
+        this.channel = DatagramChannel.open();
+        this.channel.bind(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), port));
+
+        this.receiveBuffer =
+                ByteBuffer.allocateDirect(UdpHardwareDriver.FRAME_BYTES);
+        this.sendBuffer =
+                ByteBuffer.allocateDirect(UdpHardwareDriver.FRAME_BYTES);
+
+        this.buoyancyEngines = new BuoyancyEngine[NUMBER_OF_ENGINES];
+
+        for(int i = 0; i < buoyancyEngines.length; i++)
+        {
+            buoyancyEngines[i] = new BuoyancyEngine();
+        }
+
+        this.simulator = new Simulator();
+        this.simulator.setBuoyancyEngines(buoyancyEngines);
+    }
+
+    /***************************************************************************
+     * run
+     *
+     * Starts the plant and answers frames until close() is called
+     **************************************************************************/
+    public void run()
+    {
+        Thread simThread = new Thread(simulator);
+        simThread.setDaemon(true);
+        simThread.start();
+
+        this.running = true;
+
+        while(running)
+        {
+            try
+            {
+                receiveBuffer.clear();
+                SocketAddress sender = channel.receive(receiveBuffer);
+
+                if(receiveBuffer.position() != UdpHardwareDriver.FRAME_BYTES
+                        || receiveBuffer.getInt(0)
+                        != UdpHardwareDriver.FRAME_MAGIC)
+                {
+                    continue;
+                }
+
+                sendBuffer.clear();
+                sendBuffer.putInt(UdpHardwareDriver.FRAME_MAGIC);
+                sendBuffer.putInt(receiveBuffer.getInt(4));
+                sendBuffer.putInt(receiveBuffer.getInt(8));
+                sendBuffer.putInt(receiveBuffer.getInt(12));
+                sendBuffer.putDouble(handle(receiveBuffer.getInt(8),
+                        receiveBuffer.getInt(12),
+                        receiveBuffer.getDouble(16)));
+                sendBuffer.putLong(System.nanoTime());
+                sendBuffer.flip();
+
+                channel.send(sendBuffer, sender);
+            }
+            catch(ClosedChannelException e)
+            {
+                running = false;
+            }
+            catch(IOException e)
+            {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /***************************************************************************
+     * handle
+     *
+     * Executes one command against the plant and returns the reply value
+     **************************************************************************/
+    private double handle(int command, int engine, double value)
+    {
+        if(command == UdpHardwareDriver.COMMAND_READ_DEPTH)
+        {
+            return simulator.getDepthReading();
+        }
+
+        if(command == UdpHardwareDriver.COMMAND_SET_EXTENSION
+                && engine >= 0 && engine < buoyancyEngines.length)
+        {
+            double extension = Math.max(0.0, Math.min(1.0, value));
+
+            buoyancyEngines[engine].setExtensionCoefficient(extension);
+
+            return extension;
+        }
+
+        if(DEBUG)
+            System.out.println("Stand-In Error: unknown command " + command);
+
+        return Double.NaN;
+    }
+
+    /***************************************************************************
+     * close
+     **************************************************************************/
+    public void close()
+    {
+        this.running = false;
+
+        try
+        {
+            channel.close();
+        }
+        catch(IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+
+    /***************************************************************************
+     * benchmark
+     *
+     * Measures round trip latency of depth reads and extension commands
+     **************************************************************************/
+    private static void benchmark(UdpHardwareDriver driver) throws IOException
+    {
+        //Warm up, then measure
+        for(int i = 0; i < 20000; i++)
+        {
+            driver.readDepth();
+        }
+
+        driver.resetStatistics();
+
+        for(int i = 0; i < 100000; i++)
+        {
+            driver.readDepth();
+            driver.setExtension(i % 3, 0.5);
+        }
+
+        System.out.println(driver.getLatencyReport());
+    }
+
+
+    /***************************************************************************
+     * System main
+     *
+     * Usage: java HardwareStandIn [serve|bench|control] [port]
+     *   serve   - runs only the stand-in, as a separate device process
+     *   bench   - measures latency against a stand-in in another process
+     *   control - runs the Control system against a stand-in in another
+     *             process
+     *   no mode - measures latency against a stand-in on a local thread
+     **************************************************************************/
+    public static void main(String[] args) throws IOException
+    {
+        String mode = args.length > 0 ? args[0].toLowerCase() : "";
+        int port = args.length > 1 ? Integer.parseInt(args[1])
+                : UdpHardwareDriver.DEFAULT_PORT;
+
+        if(mode.equals("serve"))
+        {
+            System.out.println("Stand-In serving on port " + port);
+            new HardwareStandIn(port).run();
+            return;
+        }
+
+        HardwareStandIn standIn = null;
+
+        if(mode.isEmpty())
+        {
+            standIn = new HardwareStandIn(port);
+            Thread standInThread = new Thread(standIn);
+            standInThread.setDaemon(true);
+            standInThread.start();
+        }
+        else if(!mode.equals("bench") && !mode.equals("control"))
+        {
+            System.out.println("Usage: java HardwareStandIn "
+                    + "[serve|bench|control] [port]");
+            return;
+        }
+
+        //Control loop ticks every 500 ms, allow 1 ms for the I/O
+        UdpHardwareDriver driver = new UdpHardwareDriver(port, 1_000_000);
+
+        if(mode.equals("control"))
+        {
+            Control control = new Control(driver);
+            new Thread(control).start();
+            return;
+        }
+
+        benchmark(driver);
+
+        driver.close();
+
+        if(standIn != null)
+            standIn.close();
+    }
+}
@@ -1,3 +1,5 @@
+import java.io.IOException;
+
 /***************************************************************************
  * Jellyfish Class
  **************************************************************************/
@@ -6,6 +8,8 @@ public class Jellyfish implements Runnable
 
     public final boolean DEBUG = true;
 
+    private PolicyTable policy;
+
     /***************************************************************************
      * run
      **************************************************************************/
@@ -15,6 +19,7 @@ public class Jellyfish implements Runnable
         Thread simThread = new Thread(simulator);
 
         Control control = new Control(simulator);
+        control.setPolicy(policy);
         Thread controlThread = new Thread(control);
 
         Input input = new Input();
@@ -27,11 +32,16 @@ public class Jellyfish implements Runnable
 
     /***************************************************************************
      * System main
+     *
+     * An optional argument names a policy table made by the PolicyCompiler
      **************************************************************************/
-    public static void main(String[] args)
+    public static void main(String[] args) throws IOException
     {
         Jellyfish jellyfish = new Jellyfish();
 
+        if(args.length > 0)
+            jellyfish.policy = new PolicyTable(args[0]);
+
         jellyfish.run();
     }
 }
@@ -0,0 +1,515 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/***************************************************************************
+ * Mission Cache Class
+ *
+ * Content addressed cache of mission results. A mission is identified by a
+ * SHA-256 hash of its full definition (MissionSpec, Simulator constants,
+ * Control parameters and BuoyancyEngine settings, which include the code
+ * versions).
+ *
+ * Results are kept in two tiers:
+ *   - a bounded in-memory LRU map
+ *   - an on-disk store made of a memory-mapped open addressing index and
+ *     an append-only data file
+ *
+ * Several processes may share the on-disk store. Every access holds a lock
+ * on the index file, shared for reads and exclusive for writes, and
+ * re-reads the index header so a grow done by another process is seen.
+ * File locks belong to the whole JVM, so within one JVM share a single
+ * MissionCache per base name: two instances accessing the same files at
+ * the same time throw OverlappingFileLockException.
+ *
+ * Index file layout: a header (magic, slot count, entry count) followed by
+ * the slot tables. A grow builds the doubled table after the current one
+ * and publishes it by writing the new slot count last, so a crash during a
+ * grow leaves the old table in use. A table of n slots therefore starts
+ * (n - INITIAL_SLOT_COUNT) slots after the header, the file holds every
+ * earlier table as well.
+ **************************************************************************/
+public class MissionCache
+{
+    //Constants
+    public final boolean DEBUG = true;
+
+    public static final String CACHE_VERSION = "0.01";
+
+    private final String INDEX_FILE_SUFFIX = ".idx";
+    private final String DATA_FILE_SUFFIX = ".dat";
+
+    private final int INDEX_MAGIC = 0x4A464D32; //"JFM2"
+    private final int INDEX_HEADER_BYTES = 16;
+    private final int KEY_BYTES = 32;
+    private final int SLOT_BYTES = KEY_BYTES + Long.BYTES + 2 * Integer.BYTES;
+    private final int INITIAL_SLOT_COUNT = 1024;
+
+    //Instance Variables
+    private LinkedHashMap<String, MissionResult> memoryTier;
+
+    private RandomAccessFile indexFile;
+    private MappedByteBuffer index;
+    private int slotCount;
+    private int entryCount;
+
+    private RandomAccessFile dataFile;
+    private FileChannel dataChannel;
+
+    /***************************************************************************
+     * Mission Cache Constructor
+     *
+     * Opens (or creates) baseName.idx and baseName.dat. At most memoryCapacity
+     * results are kept in memory.
+     **************************************************************************/
+    public MissionCache(String baseName, final int memoryCapacity)
+            throws IOException
+    {
+        this.memoryTier = new LinkedHashMap<String, MissionResult>(
+                16, 0.75f, true)
+        {
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, MissionResult> eldest)
+            {
+                return size() > memoryCapacity;
+            }
+        };
+
+        this.dataFile = new RandomAccessFile(baseName + DATA_FILE_SUFFIX,
+                "rw");
+        this.dataChannel = dataFile.getChannel();
+
+        this.indexFile = new RandomAccessFile(baseName + INDEX_FILE_SUFFIX,
+                "rw");
+
+        FileChannel channel = indexFile.getChannel();
+
+        //Locked so two processes don't both initialize a new index
+        FileLock lock = channel.lock();
+
+        try
+        {
+            if(indexFile.length() < INDEX_HEADER_BYTES)
+            {
+                mapIndex(INITIAL_SLOT_COUNT);
+                index.putInt(0, INDEX_MAGIC);
+                index.putInt(4, slotCount);
+                index.putInt(8, 0);
+            }
+            else
+            {
+                ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_BYTES);
+                channel.read(header, 0);
+
+                if(header.getInt(0) != INDEX_MAGIC)
+                {
+                    throw new IOException("Mission Cache Error: "
+                            + baseName + INDEX_FILE_SUFFIX
+                            + " is not a mission cache index");
+                }
+
+                mapIndex(header.getInt(4));
+                this.entryCount = index.getInt(8);
+            }
+        }
+        finally
+        {
+            lock.release();
+        }
+    }
+
+    /***************************************************************************
+     * getKey
+     *
+     * Hashes the full mission definition into a 32 byte key
+     **************************************************************************/
+    public static byte[] getKey(MissionSpec spec, Simulator simulator,
+                                Control control)
+    {
+        StringBuilder definition = new StringBuilder();
+
+        definition.append("CACHE_VERSION=").append(CACHE_VERSION)
+                .append('\n');
+        spec.appendDefinition(definition);
+        simulator.appendDefinition(definition);
+        control.appendDefinition(definition);
+
+        return newDigest().digest(definition.toString()
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /***************************************************************************
+     * newDigest
+     *
+     * The hash used for keys and for the identity of definition inputs
+     * (OceanField, PolicyTable)
+     **************************************************************************/
+    static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            //Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /***************************************************************************
+     * get
+     *
+     * Returns the cached result for the key or null. If withTrajectory is
+     * false a result read from disk only contains the summary.
+     **************************************************************************/
+    public synchronized MissionResult get(byte[] key, boolean withTrajectory)
+            throws IOException
+    {
+        String hexKey = toHex(key);
+
+        MissionResult result = memoryTier.get(hexKey);
+
+        if(result != null && (result.hasTrajectory() || !withTrajectory))
+            return result;
+
+        ByteBuffer buffer;
+
+        FileLock lock = indexFile.getChannel().lock(0, Long.MAX_VALUE, true);
+
+        try
+        {
+            refreshIndex();
+
+            int slot = findSlot(key);
+
+            if(index.getInt(slotOffset(slot) + KEY_BYTES + Long.BYTES + 4)
+                    == 0)
+                return null;
+
+            long dataOffset = index.getLong(slotOffset(slot) + KEY_BYTES);
+            int length = index.getInt(slotOffset(slot) + KEY_BYTES
+                    + Long.BYTES);
+
+            if(!withTrajectory)
+                length = MissionResult.SUMMARY_BYTES;
+
+            buffer = ByteBuffer.allocate(length);
+
+            while(buffer.hasRemaining())
+            {
+                if(dataChannel.read(buffer, dataOffset + buffer.position())
+                        < 0)
+                    throw new IOException(
+                            "Mission Cache Error: data truncated");
+            }
+        }
+        finally
+        {
+            lock.release();
+        }
+
+        buffer.flip();
+
+        result = MissionResult.decode(buffer, withTrajectory);
+
+        if(withTrajectory)
+            memoryTier.put(hexKey, result);
+
+        return result;
+    }
+
+    /***************************************************************************
+     * put
+     *
+     * Stores the result in both tiers. A key that is already on disk is not
+     * written again since the same definition always yields the same result.
+     **************************************************************************/
+    public synchronized void put(byte[] key, MissionResult result)
+            throws IOException
+    {
+        memoryTier.put(toHex(key), result);
+
+        //Exclusive, the data file end and the index change together
+        FileLock lock = indexFile.getChannel().lock();
+
+        try
+        {
+            refreshIndex();
+
+            int slot = findSlot(key);
+            int base = slotOffset(slot);
+
+            if(index.getInt(base + KEY_BYTES + Long.BYTES + 4) != 0)
+                return;
+
+            //Data first, so a crash never leaves the index pointing at nothing
+            ByteBuffer buffer = ByteBuffer.allocate(result.getEncodedLength());
+            result.encode(buffer);
+            buffer.flip();
+
+            long dataOffset = dataChannel.size();
+
+            while(buffer.hasRemaining())
+            {
+                dataChannel.write(buffer, dataOffset + buffer.position());
+            }
+
+            writeSlot(slot, key, dataOffset, result.getEncodedLength());
+
+            this.entryCount++;
+            index.putInt(8, entryCount);
+
+            //Keep the load factor under 3/4 so probe sequences stay short
+            if(entryCount * 4 >= slotCount * 3)
+                growIndex();
+        }
+        finally
+        {
+            lock.release();
+        }
+    }
+
+    /***************************************************************************
+     * close
+     **************************************************************************/
+    public synchronized void close()
+    {
+        try
+        {
+            index.force();
+            dataChannel.force(true);
+            dataFile.close();
+            indexFile.close();
+        }
+        catch(IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /***************************************************************************
+     * refreshIndex
+     *
+     * Picks up entries and grows done by other processes. Called with the
+     * index file locked.
+     **************************************************************************/
+    private void refreshIndex() throws IOException
+    {
+        int currentSlotCount = index.getInt(4);
+
+        if(currentSlotCount != slotCount)
+            mapIndex(currentSlotCount);
+
+        this.entryCount = index.getInt(8);
+    }
+
+    /***************************************************************************
+     * findSlot
+     *
+     * Linear probe from the key's home slot. Returns the slot holding the
+     * key or the first empty slot.
+     **************************************************************************/
+    private int findSlot(byte[] key)
+    {
+        int hash = ((key[0] & 0xFF) << 24) | ((key[1] & 0xFF) << 16)
+                | ((key[2] & 0xFF) << 8) | (key[3] & 0xFF);
+
+        int slot = Math.floorMod(hash, slotCount);
+
+        while(true)
+        {
+            int base = slotOffset(slot);
+
+            if(index.getInt(base + KEY_BYTES + Long.BYTES + 4) == 0)
+                return slot;
+
+            boolean match = true;
+
+            for(int i = 0; i < KEY_BYTES && match; i++)
+            {
+                match = index.get(base + i) == key[i];
+            }
+
+            if(match)
+                return slot;
+
+            slot = (slot + 1) % slotCount;
+        }
+    }
+
+    /***************************************************************************
+     * writeSlot
+     **************************************************************************/
+    private void writeSlot(int slot, byte[] key, long dataOffset, int length)
+    {
+        int base = slotOffset(slot);
+
+        for(int i = 0; i < KEY_BYTES; i++)
+        {
+            index.put(base + i, key[i]);
+        }
+
+        index.putLong(base + KEY_BYTES, dataOffset);
+        index.putInt(base + KEY_BYTES + Long.BYTES, length);
+        index.putInt(base + KEY_BYTES + Long.BYTES + 4, 1);
+    }
+
+    /***************************************************************************
+     * growIndex
+     *
+     * Doubles the number of slots and re-inserts every entry
+     **************************************************************************/
+    private void growIndex() throws IOException
+    {
+        int oldSlotCount = slotCount;
+        int oldTableOffset = slotOffset(0);
+
+        byte[][] keys = new byte[entryCount][];
+        long[] offsets = new long[entryCount];
+        int[] lengths = new int[entryCount];
+        int count = 0;
+
+        for(int slot = 0; slot < oldSlotCount; slot++)
+        {
+            int base = oldTableOffset + slot * SLOT_BYTES;
+
+            if(index.getInt(base + KEY_BYTES + Long.BYTES + 4) != 0)
+            {
+                keys[count] = new byte[KEY_BYTES];
+
+                for(int i = 0; i < KEY_BYTES; i++)
+                {
+                    keys[count][i] = index.get(base + i);
+                }
+
+                offsets[count] = index.getLong(base + KEY_BYTES);
+                lengths[count] = index.getInt(base + KEY_BYTES + Long.BYTES);
+                count++;
+            }
+        }
+
+        //The new table lies after the old one, which stays live until the
+        //header says otherwise. A crashed grow may have left data here.
+        mapIndex(oldSlotCount * 2);
+
+        for(int slot = 0; slot < slotCount; slot++)
+        {
+            index.putInt(slotOffset(slot) + KEY_BYTES + Long.BYTES + 4, 0);
+        }
+
+        for(int i = 0; i < count; i++)
+        {
+            writeSlot(findSlot(keys[i]), keys[i], offsets[i], lengths[i]);
+        }
+
+        //Publish
+        index.force();
+        index.putInt(4, slotCount);
+        index.force();
+
+        if(DEBUG)
+            System.out.println("Mission Cache: index grown to "
+                    + slotCount + " slots");
+    }
+
+    /***************************************************************************
+     * mapIndex
+     **************************************************************************/
+    private void mapIndex(int slotCount) throws IOException
+    {
+        this.slotCount = slotCount;
+
+        this.index = indexFile.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                0, INDEX_HEADER_BYTES
+                        + (2L * slotCount - INITIAL_SLOT_COUNT) * SLOT_BYTES);
+    }
+
+    /***************************************************************************
+     * slotOffset
+     **************************************************************************/
+    private int slotOffset(int slot)
+    {
+        return INDEX_HEADER_BYTES
+                + (slotCount - INITIAL_SLOT_COUNT + slot) * SLOT_BYTES;
+    }
+
+    /***************************************************************************
+     * toHex
+     **************************************************************************/
+    static String toHex(byte[] key)
+    {
+        StringBuilder hex = new StringBuilder(key.length * 2);
+
+        for(int i = 0; i < key.length; i++)
+        {
+            hex.append(Character.forDigit((key[i] >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(key[i] & 0xF, 16));
+        }
+
+        return hex.toString();
+    }
+
+
+    /***************************************************************************
+     * Testing main
+     **************************************************************************/
+    public static void main(String[] args) throws IOException
+    {
+        MissionSpec spec = new MissionSpec(600, 100, 20, 0);
+
+        Simulator simulator = new Simulator();
+        Control control = new Control(simulator);
+
+        byte[] key = getKey(spec, simulator, control);
+
+        MissionCache cache = new MissionCache("MissionCache", 64);
+
+        MissionResult result = cache.get(key, true);
+
+        if(result == null)
+        {
+            System.out.println("Cache miss, simulating...");
+
+            simulator.setState(spec.getInitialDepth(),
+                    spec.getInitialVelocity());
+
+            int steps = spec.getSteps();
+            double[] trajectory = new double[steps * 2];
+            double maxDepth = simulator.getDepthReading();
+
+            for(int i = 0; i < steps; i++)
+            {
+                simulator.update(spec.getTimeStep());
+
+                trajectory[i * 2] = (i + 1) * spec.getTimeStep() / 1000;
+                trajectory[i * 2 + 1] = simulator.getDepthReading();
+                maxDepth = Math.max(maxDepth, simulator.getDepthReading());
+            }
+
+            result = new MissionResult(simulator.getDepthReading(), maxDepth,
+                    spec.getMissionTime(), trajectory);
+
+            cache.put(key, result);
+        }
+        else
+        {
+            System.out.println("Cache hit!");
+        }
+
+        System.out.println("Final Depth: " + result.getFinalDepth());
+        System.out.println("Max Depth: " + result.getMaxDepth());
+        System.out.println("Summary only: "
+                + cache.get(key, false).getMissionTime() + " s");
+
+        cache.close();
+    }
+}
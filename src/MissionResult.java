@@ -0,0 +1,130 @@
+import java.nio.ByteBuffer;
+
+/***************************************************************************
+ * Mission Result Class
+ *
+ * Summary of a finished mission plus an optional trajectory. The trajectory
+ * is stored as interleaved time (seconds) and depth (meters) pairs.
+ **************************************************************************/
+public class MissionResult
+{
+    //Constants
+    public static final int SUMMARY_BYTES = 3 * Double.BYTES + Integer.BYTES;
+
+    //Instance Variables
+    private double finalDepth;
+    private double maxDepth;
+    private double missionTime;
+
+    private double[] trajectory;
+
+    /***************************************************************************
+     * Mission Result Constructor
+     **************************************************************************/
+    public MissionResult(double finalDepth, double maxDepth,
+                         double missionTime, double[] trajectory)
+    {
+        this.finalDepth = finalDepth;
+        this.maxDepth = maxDepth;
+        this.missionTime = missionTime;
+        this.trajectory = trajectory;
+    }
+
+    /***************************************************************************
+     * getEncodedLength
+     *
+     * Number of bytes written by encode()
+     **************************************************************************/
+    public int getEncodedLength()
+    {
+        int length = SUMMARY_BYTES;
+
+        if(trajectory != null)
+            length += trajectory.length * Double.BYTES;
+
+        return length;
+    }
+
+    /***************************************************************************
+     * encode
+     **************************************************************************/
+    public void encode(ByteBuffer buffer)
+    {
+        buffer.putDouble(finalDepth);
+        buffer.putDouble(maxDepth);
+        buffer.putDouble(missionTime);
+
+        if(trajectory == null)
+        {
+            buffer.putInt(0);
+        }
+        else
+        {
+            buffer.putInt(trajectory.length);
+
+            for(int i = 0; i < trajectory.length; i++)
+            {
+                buffer.putDouble(trajectory[i]);
+            }
+        }
+    }
+
+    /***************************************************************************
+     * decode
+     *
+     * Reads a result written by encode(). If withTrajectory is false only the
+     * summary is read and the buffer may be SUMMARY_BYTES long.
+     **************************************************************************/
+    public static MissionResult decode(ByteBuffer buffer,
+                                       boolean withTrajectory)
+    {
+        double finalDepth = buffer.getDouble();
+        double maxDepth = buffer.getDouble();
+        double missionTime = buffer.getDouble();
+        int trajectoryLength = buffer.getInt();
+
+        double[] trajectory = null;
+
+        if(withTrajectory && trajectoryLength > 0)
+        {
+            trajectory = new double[trajectoryLength];
+
+            for(int i = 0; i < trajectoryLength; i++)
+            {
+                trajectory[i] = buffer.getDouble();
+            }
+        }
+
+        return new MissionResult(finalDepth, maxDepth, missionTime,
+                trajectory);
+    }
+
+    /***************************************************************************
+     * Getters
+     **************************************************************************/
+    public double getFinalDepth()
+    {
+        return this.finalDepth;
+    }
+
+    public double getMaxDepth()
+    {
+        return this.maxDepth;
+    }
+
+    public double getMissionTime()
+    {
+        return this.missionTime;
+    }
+
+    public double[] getTrajectory()
+    {
+        return this.trajectory;
+    }
+
+    public boolean hasTrajectory()
+    {
+        return this.trajectory != null;
+    }
+
+}
@@ -0,0 +1,68 @@
+/***************************************************************************
+ * Mission Spec Class
+ *
+ * How a cached mission is run: number of fixed steps, the length of a step
+ * and the state the float starts in. Part of the MissionCache key, the same
+ * vehicle run for a different time or from a different start is a
+ * different mission.
+ **************************************************************************/
+public class MissionSpec
+{
+    //Instance Variables
+    private final int steps;
+    private final double timeStep; //ms
+    private final double initialDepth; //m
+    private final double initialVelocity; //m/s, positive is sinking
+
+    /***************************************************************************
+     * Mission Spec Constructor
+     **************************************************************************/
+    public MissionSpec(int steps, double timeStep, double initialDepth,
+                       double initialVelocity)
+    {
+        this.steps = steps;
+        this.timeStep = timeStep;
+        this.initialDepth = initialDepth;
+        this.initialVelocity = initialVelocity;
+    }
+
+    /***************************************************************************
+     * Appends the spec to the given builder as name=value lines
+     **************************************************************************/
+    public void appendDefinition(StringBuilder definition)
+    {
+        definition.append("STEPS=").append(steps).append('\n');
+        definition.append("TIME_STEP=").append(timeStep).append('\n');
+        definition.append("INITIAL_DEPTH=").append(initialDepth).append('\n');
+        definition.append("INITIAL_VELOCITY=").append(initialVelocity)
+                .append('\n');
+    }
+
+    /***************************************************************************
+     * Getters
+     **************************************************************************/
+    public int getSteps()
+    {
+        return this.steps;
+    }
+
+    public double getTimeStep()
+    {
+        return this.timeStep;
+    }
+
+    public double getInitialDepth()
+    {
+        return this.initialDepth;
+    }
+
+    public double getInitialVelocity()
+    {
+        return this.initialVelocity;
+    }
+
+    public double getMissionTime()
+    {
+        return steps * timeStep / 1000;
+    }
+}
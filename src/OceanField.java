@@ -0,0 +1,544 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.security.MessageDigest;
+
+/***************************************************************************
+ * Ocean Field Class
+ *
+ * Gridded ocean current and density field read from a tiled binary file.
+ * The file is memory mapped in large segments and tiles are decoded on
+ * demand into an LRU cache, so only the tiles the floats are actually in
+ * live on the heap. The cache is indexed by primitive arrays, a lookup
+ * doesn't allocate. One OceanField can be shared by any number of
+ * Simulators and threads.
+ *
+ * File layout (big endian):
+ *   header, HEADER_BYTES long:
+ *     int magic, int version, int nx, int ny, int nz,
+ *     int tileX, int tileY, int tileZ,
+ *     double originX, double originY (m),
+ *     double spacingX, double spacingY, double spacingZ (m)
+ *   tiles in z, y, x order, every tile the full tile size (edge tiles are
+ *   padded). Inside a tile cells are in z, y, x order, each cell holding
+ *   CHANNELS floats: east current, north current, vertical current (m/s,
+ *   positive down) and water density (kg/m^3).
+ **************************************************************************/
+public class OceanField
+{
+    //Constants
+    public static final int CURRENT_EAST = 0;
+    public static final int CURRENT_NORTH = 1;
+    public static final int CURRENT_DOWN = 2;
+    public static final int DENSITY = 3;
+    public static final int CHANNELS = 4;
+
+    private static final int FIELD_MAGIC = 0x4A464F46; //"JFOF"
+    private static final int FIELD_VERSION = 1;
+    private static final int HEADER_BYTES = 128;
+
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    //Instance Variables
+    private FileChannel channel;
+
+    private int nx, ny, nz;
+    private int tileX, tileY, tileZ;
+    private int tilesX, tilesY, tilesZ;
+    private double originX, originY;
+    private double spacingX, spacingY, spacingZ;
+
+    private int tileFloats;
+    private long tileBytes;
+
+    private MappedByteBuffer[] segments;
+    private int tilesPerSegment;
+
+    //Tile cache: tileSlots maps a tile to its slot or -1, the slots form a
+    //doubly linked list from newest to oldest use
+    private final Object cacheLock = new Object();
+    private int[] tileSlots;
+    private float[][] slotTiles;
+    private int[] slotTileIndex;
+    private int[] newer;
+    private int[] older;
+    private int newest;
+    private int oldest;
+    private int usedSlots;
+
+    private long cacheHits;
+    private long cacheMisses;
+
+    private String digest;
+
+    /***************************************************************************
+     * Ocean Field Constructor
+     *
+     * Keeps at most cacheTiles decoded tiles in memory
+     **************************************************************************/
+    public OceanField(String fileName, int cacheTiles)
+            throws IOException
+    {
+        this.channel = new RandomAccessFile(fileName, "r").getChannel();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+
+        while(header.hasRemaining())
+        {
+            if(channel.read(header, header.position()) < 0)
+                throw new IOException("Ocean Field Error: "
+                        + fileName + " is truncated");
+        }
+
+        header.flip();
+
+        if(header.getInt() != FIELD_MAGIC || header.getInt() != FIELD_VERSION)
+        {
+            throw new IOException("Ocean Field Error: "
+                    + fileName + " is not an ocean field file");
+        }
+
+        this.nx = header.getInt();
+        this.ny = header.getInt();
+        this.nz = header.getInt();
+        this.tileX = header.getInt();
+        this.tileY = header.getInt();
+        this.tileZ = header.getInt();
+        this.originX = header.getDouble();
+        this.originY = header.getDouble();
+        this.spacingX = header.getDouble();
+        this.spacingY = header.getDouble();
+        this.spacingZ = header.getDouble();
+
+        this.tilesX = (nx + tileX - 1) / tileX;
+        this.tilesY = (ny + tileY - 1) / tileY;
+        this.tilesZ = (nz + tileZ - 1) / tileZ;
+
+        this.tileFloats = tileX * tileY * tileZ * CHANNELS;
+        this.tileBytes = (long) tileFloats * Float.BYTES;
+
+        this.tilesPerSegment = (int) Math.max(1,
+                MAX_SEGMENT_BYTES / tileBytes);
+        int tileCount = tilesX * tilesY * tilesZ;
+        this.segments = new MappedByteBuffer[
+                (tileCount + tilesPerSegment - 1) / tilesPerSegment];
+
+        int slots = Math.max(1, Math.min(cacheTiles, tileCount));
+
+        this.tileSlots = new int[tileCount];
+        Arrays.fill(tileSlots, -1);
+
+        this.slotTiles = new float[slots][];
+        this.slotTileIndex = new int[slots];
+        this.newer = new int[slots];
+        this.older = new int[slots];
+        this.newest = -1;
+        this.oldest = -1;
+        this.usedSlots = 0;
+    }
+
+    /***************************************************************************
+     * sample
+     *
+     * Trilinear interpolation of every channel at the given position (m east,
+     * m north, m depth) into out, which must hold CHANNELS values. Positions
+     * outside the grid are clamped to its edge.
+     **************************************************************************/
+    public void sample(double x, double y, double depth, double[] out)
+    {
+        double fx = clamp((x - originX) / spacingX, nx - 1);
+        double fy = clamp((y - originY) / spacingY, ny - 1);
+        double fz = clamp(depth / spacingZ, nz - 1);
+
+        int i0 = (int) fx;
+        int j0 = (int) fy;
+        int k0 = (int) fz;
+
+        double wx = fx - i0;
+        double wy = fy - j0;
+        double wz = fz - k0;
+
+        int i1 = Math.min(i0 + 1, nx - 1);
+        int j1 = Math.min(j0 + 1, ny - 1);
+        int k1 = Math.min(k0 + 1, nz - 1);
+
+        for(int c = 0; c < CHANNELS; c++)
+        {
+            out[c] = 0;
+        }
+
+        //Corners usually share a tile, only look it up again when needed
+        int lastTileIndex = -1;
+        float[] tile = null;
+
+        for(int corner = 0; corner < 8; corner++)
+        {
+            int i = (corner & 1) == 0 ? i0 : i1;
+            int j = (corner & 2) == 0 ? j0 : j1;
+            int k = (corner & 4) == 0 ? k0 : k1;
+
+            double weight = ((corner & 1) == 0 ? 1 - wx : wx)
+                    * ((corner & 2) == 0 ? 1 - wy : wy)
+                    * ((corner & 4) == 0 ? 1 - wz : wz);
+
+            if(weight == 0)
+                continue;
+
+            int tileIndex = ((k / tileZ) * tilesY + (j / tileY)) * tilesX
+                    + (i / tileX);
+
+            if(tileIndex != lastTileIndex)
+            {
+                tile = getTile(tileIndex);
+                lastTileIndex = tileIndex;
+            }
+
+            int cell = (((k % tileZ) * tileY + (j % tileY)) * tileX
+                    + (i % tileX)) * CHANNELS;
+
+            for(int c = 0; c < CHANNELS; c++)
+            {
+                out[c] += weight * tile[cell + c];
+            }
+        }
+    }
+
+    /***************************************************************************
+     * getTile
+     *
+     * Returns the decoded tile, decoding it from the mapped file on a miss.
+     * Decoding happens outside the lock so other floats aren't held up.
+     **************************************************************************/
+    private float[] getTile(int tileIndex)
+    {
+        synchronized(cacheLock)
+        {
+            int slot = tileSlots[tileIndex];
+
+            if(slot >= 0)
+            {
+                cacheHits++;
+                touch(slot);
+                return slotTiles[slot];
+            }
+
+            cacheMisses++;
+        }
+
+        float[] tile = new float[tileFloats];
+
+        ByteBuffer segment = getSegment(tileIndex / tilesPerSegment)
+                .duplicate();
+        segment.position((int) ((tileIndex % tilesPerSegment) * tileBytes));
+        segment.asFloatBuffer().get(tile);
+
+        synchronized(cacheLock)
+        {
+            int slot = tileSlots[tileIndex];
+
+            //Another float decoded it in the meantime
+            if(slot >= 0)
+            {
+                touch(slot);
+                return slotTiles[slot];
+            }
+
+            if(usedSlots < slotTiles.length)
+            {
+                slot = usedSlots++;
+            }
+            else
+            {
+                //Evict the least recently used tile. Floats still holding
+                //its array keep a valid copy, arrays are never reused.
+                slot = oldest;
+                tileSlots[slotTileIndex[slot]] = -1;
+                unlink(slot);
+            }
+
+            slotTiles[slot] = tile;
+            slotTileIndex[slot] = tileIndex;
+            tileSlots[tileIndex] = slot;
+            linkNewest(slot);
+        }
+
+        return tile;
+    }
+
+    /***************************************************************************
+     * LRU list helpers, called holding cacheLock
+     **************************************************************************/
+    private void touch(int slot)
+    {
+        if(slot != newest)
+        {
+            unlink(slot);
+            linkNewest(slot);
+        }
+    }
+
+    private void unlink(int slot)
+    {
+        if(older[slot] >= 0)
+            newer[older[slot]] = newer[slot];
+        else
+            oldest = newer[slot];
+
+        if(newer[slot] >= 0)
+            older[newer[slot]] = older[slot];
+        else
+            newest = older[slot];
+    }
+
+    private void linkNewest(int slot)
+    {
+        older[slot] = newest;
+        newer[slot] = -1;
+
+        if(newest >= 0)
+            newer[newest] = slot;
+        else
+            oldest = slot;
+
+        newest = slot;
+    }
+
+    /***************************************************************************
+     * getSegment
+     *
+     * Maps segments lazily, they use address space but no heap
+     **************************************************************************/
+    private synchronized MappedByteBuffer getSegment(int segmentIndex)
+    {
+        if(segments[segmentIndex] == null)
+        {
+            int tileCount = tilesX * tilesY * tilesZ;
+            int firstTile = segmentIndex * tilesPerSegment;
+            int tiles = Math.min(tilesPerSegment, tileCount - firstTile);
+
+            try
+            {
+                segments[segmentIndex] = channel.map(
+                        FileChannel.MapMode.READ_ONLY,
+                        HEADER_BYTES + firstTile * tileBytes,
+                        tiles * tileBytes);
+            }
+            catch(IOException e)
+            {
+                throw new IllegalStateException(
+                        "Ocean Field Error: unable to map segment "
+                                + segmentIndex, e);
+            }
+        }
+
+        return segments[segmentIndex];
+    }
+
+    /***************************************************************************
+     * clamp
+     **************************************************************************/
+    private static double clamp(double value, int max)
+    {
+        if(value < 0)
+            return 0;
+        if(value > max)
+            return max;
+
+        return value;
+    }
+
+    /***************************************************************************
+     * Getters - cache statistics
+     **************************************************************************/
+    public long getCacheHits()
+    {
+        synchronized(cacheLock)
+        {
+            return this.cacheHits;
+        }
+    }
+
+    public long getCacheMisses()
+    {
+        synchronized(cacheLock)
+        {
+            return this.cacheMisses;
+        }
+    }
+
+    /***************************************************************************
+     * appendDefinition
+     *
+     * Identifies the field by a SHA-256 hash of the whole file. The hash is
+     * computed on first use and then kept.
+     **************************************************************************/
+    public synchronized void appendDefinition(StringBuilder definition)
+    {
+        if(digest == null)
+        {
+            try
+            {
+                MessageDigest sha = MissionCache.newDigest();
+                ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+                long position = 0;
+
+                while(channel.read(buffer, position) > 0)
+                {
+                    buffer.flip();
+                    position += buffer.remaining();
+                    sha.update(buffer);
+                    buffer.clear();
+                }
+
+                this.digest = MissionCache.toHex(sha.digest());
+            }
+            catch(IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        definition.append("OCEAN_FIELD=").append(digest).append('\n');
+    }
+
+    /***************************************************************************
+     * close
+     **************************************************************************/
+    public void close()
+    {
+        try
+        {
+            channel.close();
+        }
+        catch(IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /***************************************************************************
+     * writeSyntheticField
+     *
+     * Writes a test field: a slowly rotating eddy of currents and water that
+     * gets denser with depth.
+     **************************************************************************/
+    public static void writeSyntheticField(String fileName, int nx, int ny,
+                                           int nz, int tileSize,
+                                           double spacing, double spacingZ)
+            throws IOException
+    {
+        int tilesX = (nx + tileSize - 1) / tileSize;
+        int tilesY = (ny + tileSize - 1) / tileSize;
+        int tilesZ = (nz + tileSize - 1) / tileSize;
+
+        try(RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+            FileChannel output = file.getChannel())
+        {
+            file.setLength(0);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(FIELD_MAGIC).putInt(FIELD_VERSION);
+            header.putInt(nx).putInt(ny).putInt(nz);
+            header.putInt(tileSize).putInt(tileSize).putInt(tileSize);
+            header.putDouble(0).putDouble(0);
+            header.putDouble(spacing).putDouble(spacing).putDouble(spacingZ);
+            header.clear();
+            output.write(header);
+
+            ByteBuffer tile = ByteBuffer.allocate(
+                    tileSize * tileSize * tileSize * CHANNELS * Float.BYTES);
+
+            double centerX = nx * spacing / 2;
+            double centerY = ny * spacing / 2;
+
+            for(int tz = 0; tz < tilesZ; tz++)
+            for(int ty = 0; ty < tilesY; ty++)
+            for(int tx = 0; tx < tilesX; tx++)
+            {
+                tile.clear();
+
+                for(int k = 0; k < tileSize; k++)
+                for(int j = 0; j < tileSize; j++)
+                for(int i = 0; i < tileSize; i++)
+                {
+                    double x = (tx * tileSize + i) * spacing - centerX;
+                    double y = (ty * tileSize + j) * spacing - centerY;
+                    double depth = (tz * tileSize + k) * spacingZ;
+
+                    double decay = Math.exp(-depth / 500);
+
+                    tile.putFloat((float) (-y / centerY * 0.3 * decay));
+                    tile.putFloat((float) (x / centerX * 0.3 * decay));
+                    tile.putFloat(0f);
+                    tile.putFloat((float) (997 + depth * 0.005));
+                }
+
+                tile.flip();
+
+                while(tile.hasRemaining())
+                {
+                    output.write(tile);
+                }
+            }
+        }
+    }
+
+
+    /***************************************************************************
+     * Testing main
+     *
+     * Drifts a fleet of floats through a synthetic field that shares one
+     * tile cache.
+     **************************************************************************/
+    public static void main(String[] args) throws IOException
+    {
+        String fileName = "OceanField.bin";
+
+        writeSyntheticField(fileName, 256, 256, 64, 16, 500, 10);
+
+        OceanField field = new OceanField(fileName, 256);
+
+        int floats = 1000;
+        Simulator[] fleet = new Simulator[floats];
+
+        for(int f = 0; f < floats; f++)
+        {
+            BuoyancyEngine[] engines = new BuoyancyEngine[3];
+
+            for(int i = 0; i < engines.length; i++)
+            {
+                engines[i] = new BuoyancyEngine();
+            }
+
+            fleet[f] = new Simulator();
+            fleet[f].setBuoyancyEngines(engines);
+            fleet[f].setOceanField(field);
+            fleet[f].setPosition(Math.random() * 256 * 500,
+                    Math.random() * 256 * 500);
+        }
+
+        long startTime = System.nanoTime();
+
+        //One simulated hour at the surface, 1 second steps
+        for(int step = 0; step < 3600; step++)
+        {
+            for(int f = 0; f < floats; f++)
+            {
+                fleet[f].update(1000);
+            }
+        }
+
+        System.out.println("Fleet Time: "
+                + (System.nanoTime() - startTime) / 1000000 + " ms");
+        System.out.println("Float 0 Position: " + fleet[0].getXReading()
+                + ", " + fleet[0].getYReading());
+        System.out.println("Cache Hits: " + field.getCacheHits()
+                + " | Misses: " + field.getCacheMisses());
+
+        field.close();
+    }
+}
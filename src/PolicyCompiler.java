@@ -0,0 +1,428 @@
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/***************************************************************************
+ * Policy Compiler Class
+ *
+ * Offline compiler for the Control policy table. The state (depth,
+ * velocity, extension of the actuated engine, target depth) is discretized
+ * and the best action per cell is found with value iteration, run in
+ * parallel on a fork-join pool. The plant model is the Simulator physics
+ * stepped over one Control engine update interval.
+ *
+ * Control only moves the first buoyancy engine, so that is the extension
+ * tracked by the state; the other engines stay at their initial extension.
+ *
+ * Usage: java PolicyCompiler [output file]
+ **************************************************************************/
+public class PolicyCompiler
+{
+    //Constants
+    public final boolean DEBUG = true;
+
+    private final double DISCOUNT = 0.98;
+    private final double TOLERANCE = 1e-4;
+    private final int MAX_ITERATIONS = 2000;
+    private final int SPLIT_THRESHOLD = 8192;
+
+    private final double SIMULATOR_STEP = 100; //ms, same as Simulator.run()
+
+    private final double DEPTH_ERROR_SCALE = 10; //m
+    private final double RATE_PENALTY = 100;
+    private final double ACTUATION_COST = 0.001;
+
+    //Instance Variables
+    private int[] counts;
+    private double[] minimums;
+    private double[] steps;
+
+    private double controlInterval; //ms
+    private double targetDescentRate;
+    private double targetAscentRate;
+    private double extensionDelta;
+
+    private double[] acceleration; //Per extension cell
+
+    private double[] value;
+    private double[] nextValue;
+    private byte[] actions;
+
+
+    /***************************************************************************
+     * Policy Compiler Constructor
+     *
+     * Grid over depth (m), velocity (m/s, positive sinking) and target depth
+     * (m). The extension grid always matches the engine's extension step so
+     * every action lands exactly on a cell.
+     **************************************************************************/
+    public PolicyCompiler(double maxDepth, double depthStep,
+                          double maxVelocity, double velocityStep,
+                          double minTarget, double maxTarget,
+                          double targetStep)
+    {
+        Control control = new Control();
+        BuoyancyEngine engine = new BuoyancyEngine();
+
+        this.controlInterval = control.ENGINE_UPDATE_INTERVAL;
+        this.targetDescentRate = control.TARGET_DESCENT_RATE;
+        this.targetAscentRate = control.TARGET_ASCENT_RATE;
+        this.extensionDelta = engine.EXTENSION_DELTA;
+
+        this.counts = new int[PolicyTable.DIMENSIONS];
+        this.minimums = new double[PolicyTable.DIMENSIONS];
+        this.steps = new double[PolicyTable.DIMENSIONS];
+
+        setDimension(PolicyTable.DEPTH, 0, maxDepth, depthStep);
+        setDimension(PolicyTable.VELOCITY, -maxVelocity, maxVelocity,
+                velocityStep);
+        setDimension(PolicyTable.EXTENSION, 0, 1, extensionDelta);
+        setDimension(PolicyTable.TARGET, minTarget, maxTarget, targetStep);
+
+        this.acceleration = getAccelerations(control.NUMBER_OF_ENGINES);
+
+        int cells = 1;
+
+        for(int d = 0; d < PolicyTable.DIMENSIONS; d++)
+        {
+            cells *= counts[d];
+        }
+
+        this.value = new double[cells];
+        this.nextValue = new double[cells];
+        this.actions = new byte[cells];
+    }
+
+    /***************************************************************************
+     * setDimension
+     **************************************************************************/
+    private void setDimension(int dimension, double min, double max,
+                              double step)
+    {
+        this.minimums[dimension] = min;
+        this.steps[dimension] = step;
+        this.counts[dimension] = (int) Math.round((max - min) / step) + 1;
+    }
+
+    /***************************************************************************
+     * getAccelerations
+     *
+     * Simulator acceleration for every extension of the first engine
+     **************************************************************************/
+    private double[] getAccelerations(int numberOfEngines)
+    {
+        Simulator simulator = new Simulator();
+        BuoyancyEngine[] engines = new BuoyancyEngine[numberOfEngines];
+
+        for(int i = 0; i < engines.length; i++)
+        {
+            engines[i] = new BuoyancyEngine();
+        }
+
+        simulator.setBuoyancyEngines(engines);
+
+        double[] accelerations = new double[counts[PolicyTable.EXTENSION]];
+
+        for(int e = 0; e < accelerations.length; e++)
+        {
+            engines[0].setExtensionCoefficient(
+                    cellValue(PolicyTable.EXTENSION, e));
+
+            accelerations[e] = simulator.getAcceleration();
+        }
+
+        return accelerations;
+    }
+
+    /***************************************************************************
+     * compile
+     *
+     * Runs value iteration until the largest change in a sweep is under the
+     * tolerance. Every sweep reads value and writes nextValue, so cells are
+     * independent and split freely across the pool.
+     **************************************************************************/
+    public void compile()
+    {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+
+        for(int iteration = 1; iteration <= MAX_ITERATIONS; iteration++)
+        {
+            double change = pool.invoke(new Sweep(0, value.length));
+
+            double[] swap = value;
+            value = nextValue;
+            nextValue = swap;
+
+            if(DEBUG && iteration % 50 == 0)
+                System.out.println("Iteration " + iteration
+                        + " | Largest Change: " + change);
+
+            if(change < TOLERANCE)
+            {
+                if(DEBUG)
+                    System.out.println("Converged after " + iteration
+                            + " iterations");
+                return;
+            }
+        }
+
+        if(DEBUG)
+            System.out.println("Policy Compiler: stopped at "
+                    + MAX_ITERATIONS + " iterations without converging");
+    }
+
+    /***************************************************************************
+     * Sweep Class
+     *
+     * One Bellman update over a range of cells, returns the largest change
+     **************************************************************************/
+    private class Sweep extends RecursiveTask<Double>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private int start;
+        private int end;
+
+        Sweep(int start, int end)
+        {
+            this.start = start;
+            this.end = end;
+        }
+
+        protected Double compute()
+        {
+            if(end - start > SPLIT_THRESHOLD)
+            {
+                int middle = (start + end) >>> 1;
+
+                Sweep left = new Sweep(start, middle);
+                left.fork();
+
+                double right = new Sweep(middle, end).compute();
+
+                return Math.max(right, left.join());
+            }
+
+            double largestChange = 0;
+
+            for(int cell = start; cell < end; cell++)
+            {
+                double change = Math.abs(update(cell) - value[cell]);
+
+                if(change > largestChange)
+                    largestChange = change;
+            }
+
+            return largestChange;
+        }
+    }
+
+    /***************************************************************************
+     * update
+     *
+     * Bellman update of one cell. Writes the new value and best action and
+     * returns the new value.
+     **************************************************************************/
+    private double update(int cell)
+    {
+        int depthCell = cell % counts[PolicyTable.DEPTH];
+        int rest = cell / counts[PolicyTable.DEPTH];
+        int velocityCell = rest % counts[PolicyTable.VELOCITY];
+        rest /= counts[PolicyTable.VELOCITY];
+        int extensionCell = rest % counts[PolicyTable.EXTENSION];
+        int targetCell = rest / counts[PolicyTable.EXTENSION];
+
+        double depth = cellValue(PolicyTable.DEPTH, depthCell);
+        double velocity = cellValue(PolicyTable.VELOCITY, velocityCell);
+        double target = cellValue(PolicyTable.TARGET, targetCell);
+
+        double bestValue = Double.POSITIVE_INFINITY;
+        byte bestAction = PolicyTable.ACTION_HOLD;
+
+        for(byte action = PolicyTable.ACTION_SINK;
+            action <= PolicyTable.ACTION_ASCEND; action++)
+        {
+            int nextExtension = extensionCell + (action - 1);
+
+            if(nextExtension < 0
+                    || nextExtension >= counts[PolicyTable.EXTENSION])
+            {
+                continue;
+            }
+
+            //Plant model, same integration as Simulator.update()
+            double a = acceleration[nextExtension];
+            double d = depth;
+            double v = velocity;
+
+            for(double t = 0; t < controlInterval; t += SIMULATOR_STEP)
+            {
+                v += a * SIMULATOR_STEP / 1000;
+                d += v * SIMULATOR_STEP / 1000;
+
+                if(d < 0)
+                {
+                    d = 0;
+                    v = 0;
+                }
+            }
+
+            double candidate = getCost(d, v, target, action)
+                    + DISCOUNT * interpolate(d, v, nextExtension, targetCell);
+
+            if(candidate < bestValue)
+            {
+                bestValue = candidate;
+                bestAction = action;
+            }
+        }
+
+        nextValue[cell] = bestValue;
+        actions[cell] = bestAction;
+
+        return bestValue;
+    }
+
+    /***************************************************************************
+     * getCost
+     *
+     * Squared depth error, plus a penalty for exceeding the Control target
+     * rates and a small cost for moving the piston
+     **************************************************************************/
+    private double getCost(double depth, double velocity, double target,
+                           byte action)
+    {
+        double depthError = (depth - target) / DEPTH_ERROR_SCALE;
+
+        double overspeed = 0;
+
+        if(velocity > targetDescentRate)
+            overspeed = velocity - targetDescentRate;
+        if(-velocity > targetAscentRate)
+            overspeed = -velocity - targetAscentRate;
+
+        return depthError * depthError
+                + RATE_PENALTY * overspeed * overspeed
+                + (action == PolicyTable.ACTION_HOLD ? 0 : ACTUATION_COST);
+    }
+
+    /***************************************************************************
+     * interpolate
+     *
+     * Bilinear interpolation of the current value over depth and velocity,
+     * extension and target are exact cells
+     **************************************************************************/
+    private double interpolate(double depth, double velocity,
+                               int extensionCell, int targetCell)
+    {
+        double fd = gridPosition(PolicyTable.DEPTH, depth);
+        double fv = gridPosition(PolicyTable.VELOCITY, velocity);
+
+        int d0 = Math.min((int) fd, counts[PolicyTable.DEPTH] - 2);
+        int v0 = Math.min((int) fv, counts[PolicyTable.VELOCITY] - 2);
+
+        double wd = fd - d0;
+        double wv = fv - v0;
+
+        int base = ((targetCell * counts[PolicyTable.EXTENSION]
+                + extensionCell) * counts[PolicyTable.VELOCITY] + v0)
+                * counts[PolicyTable.DEPTH] + d0;
+        int nextRow = counts[PolicyTable.DEPTH];
+
+        return (1 - wv) * ((1 - wd) * value[base] + wd * value[base + 1])
+                + wv * ((1 - wd) * value[base + nextRow]
+                + wd * value[base + nextRow + 1]);
+    }
+
+    /***************************************************************************
+     * gridPosition - fractional cell index, clamped to the grid
+     **************************************************************************/
+    private double gridPosition(int dimension, double value)
+    {
+        double position = (value - minimums[dimension]) / steps[dimension];
+
+        return Math.max(0, Math.min(counts[dimension] - 1, position));
+    }
+
+    /***************************************************************************
+     * cellValue - state value at the center of a cell
+     **************************************************************************/
+    private double cellValue(int dimension, int cell)
+    {
+        return minimums[dimension] + cell * steps[dimension];
+    }
+
+    /***************************************************************************
+     * write
+     **************************************************************************/
+    public void write(String fileName) throws IOException
+    {
+        PolicyTable.write(fileName, counts, minimums, steps, actions);
+    }
+
+
+    /***************************************************************************
+     * System main
+     *
+     * Compiles the default policy, then checks it in closed loop against the
+     * Simulator physics.
+     **************************************************************************/
+    public static void main(String[] args) throws IOException
+    {
+        String fileName = args.length > 0 ? args[0] : "Policy.bin";
+
+        long startTime = System.nanoTime();
+
+        PolicyCompiler compiler =
+                new PolicyCompiler(120, 2, 0.5, 0.025, 20, 100, 20);
+        compiler.compile();
+        compiler.write(fileName);
+
+        System.out.println("Compile Time: "
+                + (System.nanoTime() - startTime) / 1000000 + " ms");
+
+        //Closed loop check, target 60 m for one simulated hour
+        PolicyTable table = new PolicyTable(fileName);
+
+        BuoyancyEngine[] engines = new BuoyancyEngine[3];
+
+        for(int i = 0; i < engines.length; i++)
+        {
+            engines[i] = new BuoyancyEngine();
+        }
+
+        Simulator simulator = new Simulator();
+        simulator.setBuoyancyEngines(engines);
+
+        double lastDepth = 0;
+        double squareError = 0;
+        int cycles = 7200;
+
+        for(int cycle = 0; cycle < cycles; cycle++)
+        {
+            double depth = simulator.getDepthReading();
+            double velocity = (depth - lastDepth) / 0.5;
+            lastDepth = depth;
+
+            byte action = table.lookup(depth, velocity,
+                    engines[0].getExtensionCoefficient(), 60);
+
+            if(action == PolicyTable.ACTION_SINK)
+                engines[0].sink();
+            else if(action == PolicyTable.ACTION_ASCEND)
+                engines[0].ascend();
+
+            for(int step = 0; step < 5; step++)
+            {
+                simulator.update(100);
+            }
+
+            if(cycle >= cycles / 2)
+                squareError += (depth - 60) * (depth - 60);
+        }
+
+        System.out.println("Final Depth: " + simulator.getDepthReading());
+        System.out.println("RMS Error (second half): "
+                + Math.sqrt(squareError / (cycles / 2)));
+    }
+}
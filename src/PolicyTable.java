@@ -0,0 +1,204 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+
+/***************************************************************************
+ * Policy Table Class
+ *
+ * Precompiled control policy, written by the PolicyCompiler and memory
+ * mapped at runtime. The state is discretized on a regular grid over depth,
+ * velocity, extension of the actuated buoyancy engine and target depth, and
+ * each cell holds the best action. A lookup is a nearest cell index, O(1)
+ * and allocation free. The mapping is read only, so one table can serve
+ * any number of Control threads.
+ *
+ * File layout (big endian):
+ *   header, HEADER_BYTES long:
+ *     int magic, int version,
+ *     DIMENSIONS x int cell count,
+ *     DIMENSIONS x double minimum, DIMENSIONS x double step
+ *   one action byte per cell, depth varying fastest, then velocity,
+ *   extension and target depth.
+ **************************************************************************/
+public class PolicyTable
+{
+    //Constants
+    public static final byte ACTION_SINK = 0;
+    public static final byte ACTION_HOLD = 1;
+    public static final byte ACTION_ASCEND = 2;
+
+    public static final int DEPTH = 0;
+    public static final int VELOCITY = 1; //m/s, positive is sinking
+    public static final int EXTENSION = 2;
+    public static final int TARGET = 3;
+    public static final int DIMENSIONS = 4;
+
+    private static final int TABLE_MAGIC = 0x4A465054; //"JFPT"
+    private static final int TABLE_VERSION = 1;
+    private static final int HEADER_BYTES = 128;
+
+    //Instance Variables
+    private int[] counts;
+    private double[] minimums;
+    private double[] steps;
+
+    private MappedByteBuffer actions;
+
+    private String digest;
+
+    /***************************************************************************
+     * Policy Table Constructor
+     *
+     * Maps a table written by write()
+     **************************************************************************/
+    public PolicyTable(String fileName) throws IOException
+    {
+        try(RandomAccessFile file = new RandomAccessFile(fileName, "r");
+            FileChannel channel = file.getChannel())
+        {
+            MappedByteBuffer header = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+
+            if(header.getInt() != TABLE_MAGIC
+                    || header.getInt() != TABLE_VERSION)
+            {
+                throw new IOException("Policy Table Error: "
+                        + fileName + " is not a policy table");
+            }
+
+            this.counts = new int[DIMENSIONS];
+            this.minimums = new double[DIMENSIONS];
+            this.steps = new double[DIMENSIONS];
+
+            long cells = 1;
+
+            for(int d = 0; d < DIMENSIONS; d++)
+            {
+                counts[d] = header.getInt();
+                cells *= counts[d];
+            }
+
+            for(int d = 0; d < DIMENSIONS; d++)
+            {
+                minimums[d] = header.getDouble();
+            }
+
+            for(int d = 0; d < DIMENSIONS; d++)
+            {
+                steps[d] = header.getDouble();
+            }
+
+            //The mapping stays valid after the channel is closed
+            this.actions = channel.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_BYTES, cells);
+
+            this.digest = getDigest(header, actions);
+        }
+    }
+
+    /***************************************************************************
+     * getDigest
+     *
+     * SHA-256 of the header and every action, as hex
+     **************************************************************************/
+    private static String getDigest(MappedByteBuffer header,
+                                    MappedByteBuffer actions)
+    {
+        MessageDigest sha = MissionCache.newDigest();
+        sha.update(header.duplicate().clear());
+        sha.update(actions.duplicate().clear());
+
+        return MissionCache.toHex(sha.digest());
+    }
+
+    /***************************************************************************
+     * appendDefinition
+     *
+     * Identifies the table by the hash of its contents
+     **************************************************************************/
+    public void appendDefinition(StringBuilder definition)
+    {
+        definition.append("POLICY=").append(digest).append('\n');
+    }
+
+    /***************************************************************************
+     * lookup
+     *
+     * Returns the action of the cell nearest to the given state. States
+     * outside the grid use the closest edge cell.
+     **************************************************************************/
+    public byte lookup(double depth, double velocity, double extension,
+                       double target)
+    {
+        int index = nearest(TARGET, target);
+        index = index * counts[EXTENSION] + nearest(EXTENSION, extension);
+        index = index * counts[VELOCITY] + nearest(VELOCITY, velocity);
+        index = index * counts[DEPTH] + nearest(DEPTH, depth);
+
+        return actions.get(index);
+    }
+
+    /***************************************************************************
+     * nearest
+     **************************************************************************/
+    private int nearest(int dimension, double value)
+    {
+        long cell = Math.round((value - minimums[dimension])
+                / steps[dimension]);
+
+        return (int) Math.max(0, Math.min(counts[dimension] - 1, cell));
+    }
+
+    /***************************************************************************
+     * write
+     *
+     * Writes a table. counts, minimums and steps are indexed by the dimension
+     * constants, actions holds one byte per cell in file order.
+     **************************************************************************/
+    public static void write(String fileName, int[] counts, double[] minimums,
+                             double[] steps, byte[] actions)
+            throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(TABLE_MAGIC);
+        header.putInt(TABLE_VERSION);
+
+        for(int d = 0; d < DIMENSIONS; d++)
+        {
+            header.putInt(counts[d]);
+        }
+
+        for(int d = 0; d < DIMENSIONS; d++)
+        {
+            header.putDouble(minimums[d]);
+        }
+
+        for(int d = 0; d < DIMENSIONS; d++)
+        {
+            header.putDouble(steps[d]);
+        }
+
+        header.clear();
+
+        try(RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+            FileChannel channel = file.getChannel())
+        {
+            file.setLength(0);
+
+            while(header.hasRemaining())
+            {
+                channel.write(header);
+            }
+
+            ByteBuffer body = ByteBuffer.wrap(actions);
+
+            while(body.hasRemaining())
+            {
+                channel.write(body);
+            }
+        }
+    }
+}
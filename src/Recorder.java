@@ -1,6 +1,8 @@
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /***************************************************************************
  * Recorder Class
@@ -13,11 +15,16 @@ public class Recorder
     private final int BUFFER_SIZE = 50;
 
     private FileWriter fstream;
+    private RecorderService service;
+    private String missionId;
     private String[] buffer;
     private int bufferIndex;
 
     private ArrayList<String> columnNames;
     private ArrayList<String> columnValues;
+    private double[] numericValues;
+
+    private RecorderAggregator aggregator;
 
     private StringBuilder writeString;
 
@@ -34,16 +41,119 @@ public class Recorder
 
         this.columnValues = new ArrayList<>();
         this.columnNames = new ArrayList<>();
+        this.numericValues = new double[8];
+
+        this.aggregator = null;
+
+        this.createFile(OUTPUT_FILE_NAME);
+    }
+
+    /***************************************************************************
+     * Recorder Constructor - File Name Overload
+     *
+     * Records into the given file instead of OutputData.csv, so several
+     * Recorders can run side by side.
+     **************************************************************************/
+    public Recorder(String fileName)
+    {
+        this.fstream = null;
+        this.buffer = new String[50];
+        this.bufferIndex = 0;
+
+        this.writeString = new StringBuilder();
+
+        this.columnValues = new ArrayList<>();
+        this.columnNames = new ArrayList<>();
+        this.numericValues = new double[8];
+
+        this.aggregator = null;
+
+        this.createFile(fileName);
+    }
+
+    /***************************************************************************
+     * Recorder Constructor - Service Overload
+     *
+     * Records into a shared RecorderService instead of its own file. Every
+     * flushed buffer becomes one block tagged with the mission id.
+     **************************************************************************/
+    public Recorder(RecorderService service, String missionId)
+    {
+        this.fstream = null;
+        this.buffer = new String[50];
+        this.bufferIndex = 0;
+
+        this.writeString = new StringBuilder();
+
+        this.columnValues = new ArrayList<>();
+        this.columnNames = new ArrayList<>();
+        this.numericValues = new double[8];
+
+        this.aggregator = null;
+
+        this.service = service;
+        this.missionId = missionId;
+    }
+
+    /***************************************************************************
+     * setAggregation
+     *
+     * Puts a downsampling stage in front of the writer. Every writeVariables()
+     * call then feeds a window, and one row of min, max, mean and last per
+     * column is written when the window closes: once the time column has
+     * advanced by window, or earlier when a column changes by more than its
+     * deadband (see setDeadband). Call before writeVariableNames() so the
+     * header matches.
+     **************************************************************************/
+    public void setAggregation(String timeColumn, double window)
+    {
+        this.aggregator = new RecorderAggregator(
+                getColumnIndex(timeColumn), window);
+    }
+
+    /***************************************************************************
+     * setAggregation - sample count overload
+     *
+     * Same as above for recordings without a time column, a window closes
+     * after windowSamples rows.
+     **************************************************************************/
+    public void setAggregation(int windowSamples)
+    {
+        this.aggregator = new RecorderAggregator(windowSamples);
+    }
+
+    /***************************************************************************
+     * setDeadband
+     *
+     * Deadband of one column, in that column's units. NaN or 0 turns it off,
+     * which is the default. Call after setAggregation().
+     **************************************************************************/
+    public void setDeadband(String column, double deadband)
+    {
+        if(this.aggregator == null)
+        {
+            throw new IllegalStateException("Recorder Error: "
+                    + "setDeadband without setAggregation");
+        }
 
-        this.createFile();
+        this.aggregator.setDeadband(getColumnIndex(column), deadband);
     }
 
     /***************************************************************************
      * updateVariable - double overload
+     *
+     * When aggregating the value is only kept as a double, no String is made
      **************************************************************************/
     public void updateVariable(String name, double value)
     {
-        updateVariable(name, value + "");
+        int columnIndex = getColumnIndex(name);
+
+        this.numericValues[columnIndex] = value;
+
+        if(this.aggregator == null)
+        {
+            this.columnValues.set(columnIndex, value + "");
+        }
     }
 
     /***************************************************************************
@@ -51,25 +161,39 @@ public class Recorder
      **************************************************************************/
     public void updateVariable(String name, String value)
     {
-        int columnIndex = -1;
+        int columnIndex = getColumnIndex(name);
 
+        this.numericValues[columnIndex] = Double.NaN;
+        this.columnValues.set(columnIndex, value);
+    }
+
+    /***************************************************************************
+     * getColumnIndex
+     *
+     * Returns the index of the named column, adding it if it doesn't exist
+     **************************************************************************/
+    private int getColumnIndex(String name)
+    {
         for(int i = 0; i < this.columnNames.size(); i++)
         {
             if(name.equalsIgnoreCase(this.columnNames.get(i)))
             {
-                columnIndex = i;
+                return i;
             }
         }
 
-        if(columnIndex == -1)
-        {
-            this.columnNames.add(name);
-            this.columnValues.add(value);
-        }
-        else
+        this.columnNames.add(name);
+        this.columnValues.add("");
+
+        if(this.columnNames.size() > this.numericValues.length)
         {
-            this.columnValues.add(columnIndex, value);
+            this.numericValues = Arrays.copyOf(this.numericValues,
+                    this.numericValues.length * 2);
         }
+
+        this.numericValues[this.columnNames.size() - 1] = Double.NaN;
+
+        return this.columnNames.size() - 1;
     }
 
     /***************************************************************************
@@ -77,6 +201,17 @@ public class Recorder
      **************************************************************************/
     public void writeVariables()
     {
+        if(this.aggregator != null)
+        {
+            if(this.aggregator.addSample(this.numericValues,
+                    this.columnNames.size()))
+            {
+                this.writeWindow();
+            }
+
+            return;
+        }
+
         this.writeString.setLength(0);
 
         for(int i = 0; i < this.columnValues.size() - 1; i++)
@@ -97,6 +232,24 @@ public class Recorder
     {
         this.writeString.setLength(0);
 
+        if(this.aggregator != null)
+        {
+            writeString.append("Samples");
+
+            for(int i = 0; i < this.columnNames.size(); i++)
+            {
+                String name = columnNames.get(i);
+
+                writeString.append(", ").append(name).append(" Min");
+                writeString.append(", ").append(name).append(" Max");
+                writeString.append(", ").append(name).append(" Mean");
+                writeString.append(", ").append(name).append(" Last");
+            }
+
+            this.writeLine(this.writeString.toString());
+            return;
+        }
+
         for(int i = 0; i < this.columnNames.size() - 1; i++)
         {
             writeString.append(columnNames.get(i));
@@ -108,6 +261,38 @@ public class Recorder
         this.writeLine(this.writeString.toString());
     }
 
+    /***************************************************************************
+     * writeWindow()
+     *
+     * Writes the current aggregation window as one row and starts a new one.
+     * Non-numeric columns only fill the Last field.
+     **************************************************************************/
+    private void writeWindow()
+    {
+        this.writeString.setLength(0);
+
+        writeString.append(aggregator.getSampleCount());
+
+        for(int i = 0; i < this.columnNames.size(); i++)
+        {
+            if(aggregator.hasValues(i))
+            {
+                writeString.append(", ").append(aggregator.getMin(i));
+                writeString.append(", ").append(aggregator.getMax(i));
+                writeString.append(", ").append(aggregator.getMean(i));
+                writeString.append(", ").append(aggregator.getLast(i));
+            }
+            else
+            {
+                writeString.append(", , , , ").append(columnValues.get(i));
+            }
+        }
+
+        this.writeLine(this.writeString.toString());
+
+        this.aggregator.reset();
+    }
+
 
     /***************************************************************************
      * WriteLine
@@ -130,7 +315,17 @@ public class Recorder
      **************************************************************************/
     public void stopRecording()
     {
+        if(this.aggregator != null && this.aggregator.getSampleCount() > 0)
+        {
+            this.writeWindow();
+        }
+
         this.writeToFile(this.bufferIndex);
+        this.bufferIndex = 0;
+
+        //The service owns its files
+        if(this.service != null)
+            return;
 
         try
         {
@@ -146,11 +341,12 @@ public class Recorder
     /***************************************************************************
      * CreateFile
      **************************************************************************/
-    private void createFile()
+    private void createFile(String fileName)
     {
         try
         {
-            this.fstream = new FileWriter(OUTPUT_FILE_NAME, false);
+            this.fstream = new FileWriter(fileName, StandardCharsets.UTF_8,
+                    false);
         }
         catch(IOException e)
         {
@@ -178,19 +374,86 @@ public class Recorder
      **************************************************************************/
     private void writeToFile(int stopIndex)
     {
-        try
+        RecorderFlushEvent event = new RecorderFlushEvent();
+        event.begin();
+
+        long bytes = 0;
+
+        //Encoded size, only worth counting while the event is recorded
+        if(event.isEnabled())
         {
             for(int i = 0 ; i < stopIndex; i++)
             {
-                fstream.write(buffer[i] + "\n");
+                bytes += getEncodedLength(buffer[i]) + 1;
             }
+        }
 
-            fstream.flush();
+        if(this.service != null)
+        {
+            if(stopIndex > 0)
+                this.service.submit(missionId, buffer, stopIndex);
         }
-        catch(IOException e)
+        else
         {
-            e.printStackTrace();
+            try
+            {
+                for(int i = 0 ; i < stopIndex; i++)
+                {
+                    fstream.write(buffer[i] + "\n");
+                }
+
+                fstream.flush();
+            }
+            catch(IOException e)
+            {
+                e.printStackTrace();
+            }
+        }
+
+        event.end();
+
+        if(event.shouldCommit())
+        {
+            event.lines = stopIndex;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    /***************************************************************************
+     * getEncodedLength
+     *
+     * Number of bytes the line takes in UTF-8, without encoding it
+     **************************************************************************/
+    private static long getEncodedLength(String line)
+    {
+        long length = 0;
+
+        for(int i = 0; i < line.length(); i++)
+        {
+            char c = line.charAt(i);
+
+            if(c < 0x80)
+            {
+                length += 1;
+            }
+            else if(c < 0x800)
+            {
+                length += 2;
+            }
+            else if(Character.isHighSurrogate(c) && i + 1 < line.length()
+                    && Character.isLowSurrogate(line.charAt(i + 1)))
+            {
+                length += 4;
+                i++;
+            }
+            else
+            {
+                length += 3;
+            }
         }
+
+        return length;
     }
 
 
@@ -212,5 +475,25 @@ public class Recorder
         test.writeVariables();
 
         test.stopRecording();
+
+        //Aggregated recording at 10 Hz: a descent to 50 m, then a 10 minute
+        //park, in 60 second windows
+        Recorder aggregated = new Recorder("AggregatedOutputData.csv");
+        aggregated.setAggregation("Time", 60);
+        aggregated.setDeadband("Depth", 5.0);
+
+        aggregated.updateVariable("Time", 0);
+        aggregated.updateVariable("Depth", 0);
+        aggregated.updateVariable("Mood", "Good!");
+        aggregated.writeVariableNames();
+
+        for(int i = 0; i < 6500; i++)
+        {
+            aggregated.updateVariable("Time", i * 0.1);
+            aggregated.updateVariable("Depth", Math.min(50, i * 0.01));
+            aggregated.writeVariables();
+        }
+
+        aggregated.stopRecording();
     }
 }
@@ -0,0 +1,235 @@
+import java.util.Arrays;
+
+/***************************************************************************
+ * Recorder Aggregator Class
+ *
+ * Windowed downsampling stage used by the Recorder. Keeps min, max, mean and
+ * last value of every channel in primitive arrays, so adding a sample never
+ * allocates. A window closes once a time channel has advanced by the window
+ * length, or after a fixed number of samples when there is no time channel.
+ * It closes early when a channel moves further than its own deadband from
+ * the value it had when the previous window was emitted.
+ **************************************************************************/
+public class RecorderAggregator
+{
+    //Instance Variables
+    private int windowSamples;
+
+    private int timeChannel;
+    private double windowLength;
+    private double windowStart;
+
+    private int channelCount;
+    private int sampleCount;
+
+    private double[] min;
+    private double[] max;
+    private double[] sum;
+    private double[] last;
+    private int[] count;
+
+    private double[] reference;
+    private double[] deadband;
+    private boolean windowComplete;
+
+    /***************************************************************************
+     * Recorder Aggregator Constructor - Sample Window
+     *
+     * A window holds windowSamples rows, <= 0 disables the fixed window
+     **************************************************************************/
+    public RecorderAggregator(int windowSamples)
+    {
+        this.windowSamples = windowSamples;
+
+        this.timeChannel = -1;
+        this.windowLength = 0;
+        this.windowStart = Double.NaN;
+
+        this.min = new double[0];
+        this.max = new double[0];
+        this.sum = new double[0];
+        this.last = new double[0];
+        this.count = new int[0];
+        this.reference = new double[0];
+        this.deadband = new double[0];
+
+        this.channelCount = 0;
+        this.sampleCount = 0;
+    }
+
+    /***************************************************************************
+     * Recorder Aggregator Constructor - Time Window
+     *
+     * A window closes with the first sample at least windowLength after the
+     * window's first sample, in the units of the time channel
+     **************************************************************************/
+    public RecorderAggregator(int timeChannel, double windowLength)
+    {
+        this(0);
+
+        this.timeChannel = timeChannel;
+        this.windowLength = windowLength;
+    }
+
+    /***************************************************************************
+     * setDeadband
+     *
+     * Closes the window early when the channel moves further than deadband,
+     * in the channel's own units. NaN or <= 0 turns it off.
+     **************************************************************************/
+    public void setDeadband(int channel, double deadband)
+    {
+        if(channel >= this.channelCount)
+        {
+            this.ensureChannels(channel + 1);
+        }
+
+        this.deadband[channel] = deadband;
+    }
+
+    /***************************************************************************
+     * addSample
+     *
+     * Accumulates one row. NaN values (non-numeric channels) are skipped.
+     * Returns true once the current window is complete and should be emitted.
+     **************************************************************************/
+    public boolean addSample(double[] values, int channels)
+    {
+        if(channels > this.channelCount)
+        {
+            this.ensureChannels(channels);
+        }
+
+        for(int i = 0; i < channels; i++)
+        {
+            double value = values[i];
+
+            if(Double.isNaN(value))
+                continue;
+
+            if(count[i] == 0)
+            {
+                min[i] = value;
+                max[i] = value;
+            }
+
+            //The first value of a channel is its reference, it doesn't
+            //close the window on its own
+            if(Double.isNaN(reference[i]))
+                reference[i] = value;
+            else
+            {
+                if(value < min[i])
+                    min[i] = value;
+                if(value > max[i])
+                    max[i] = value;
+            }
+
+            sum[i] += value;
+            last[i] = value;
+            count[i]++;
+
+            if(deadband[i] > 0 && Math.abs(value - reference[i]) > deadband[i])
+            {
+                windowComplete = true;
+            }
+        }
+
+        this.sampleCount++;
+
+        if(timeChannel >= 0 && timeChannel < channels
+                && !Double.isNaN(values[timeChannel]))
+        {
+            if(Double.isNaN(windowStart))
+                windowStart = values[timeChannel];
+            else if(values[timeChannel] - windowStart >= windowLength)
+                windowComplete = true;
+        }
+
+        if(windowSamples > 0 && sampleCount >= windowSamples)
+        {
+            windowComplete = true;
+        }
+
+        return windowComplete;
+    }
+
+    /***************************************************************************
+     * reset
+     *
+     * Starts a new window. The last values become the deadband reference.
+     **************************************************************************/
+    public void reset()
+    {
+        for(int i = 0; i < channelCount; i++)
+        {
+            if(count[i] > 0)
+                reference[i] = last[i];
+
+            sum[i] = 0;
+            count[i] = 0;
+        }
+
+        this.sampleCount = 0;
+        this.windowStart = Double.NaN;
+        this.windowComplete = false;
+    }
+
+    /***************************************************************************
+     * ensureChannels
+     *
+     * Only called when a new column appears, never per sample. New channels
+     * have no deadband.
+     **************************************************************************/
+    private void ensureChannels(int channels)
+    {
+        this.min = Arrays.copyOf(min, channels);
+        this.max = Arrays.copyOf(max, channels);
+        this.sum = Arrays.copyOf(sum, channels);
+        this.last = Arrays.copyOf(last, channels);
+        this.count = Arrays.copyOf(count, channels);
+        this.reference = Arrays.copyOf(reference, channels);
+        this.deadband = Arrays.copyOf(deadband, channels);
+
+        for(int i = this.channelCount; i < channels; i++)
+        {
+            reference[i] = Double.NaN;
+        }
+
+        this.channelCount = channels;
+    }
+
+    /***************************************************************************
+     * Getters
+     **************************************************************************/
+    public int getSampleCount()
+    {
+        return this.sampleCount;
+    }
+
+    public boolean hasValues(int channel)
+    {
+        return channel < channelCount && count[channel] > 0;
+    }
+
+    public double getMin(int channel)
+    {
+        return this.min[channel];
+    }
+
+    public double getMax(int channel)
+    {
+        return this.max[channel];
+    }
+
+    public double getMean(int channel)
+    {
+        return this.sum[channel] / this.count[channel];
+    }
+
+    public double getLast(int channel)
+    {
+        return this.last[channel];
+    }
+
+}
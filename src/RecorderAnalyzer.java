@@ -0,0 +1,819 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/***************************************************************************
+ * Recorder Analyzer Class
+ *
+ * Post-dive analysis tool for Recorder output files. The file is memory
+ * mapped, the data section is split into chunks on line boundaries and the
+ * chunks are parsed in parallel. Numbers are parsed straight from the mapped
+ * bytes, no String is created per field or per line.
+ *
+ * Computes per-column statistics, dive phase boundaries (from the depth
+ * and time columns) and a histogram of the vertical rate. Mean and standard
+ * deviation use Welford's update within a chunk and Chan's formula to merge
+ * chunks, which stays accurate for large values with little spread.
+ *
+ * Usage: java RecorderAnalyzer <file> [depth column] [time column]
+ **************************************************************************/
+public class RecorderAnalyzer
+{
+    //Constants
+    public static final int PHASE_SURFACE = 0;
+    public static final int PHASE_DESCENT = 1;
+    public static final int PHASE_PARK = 2;
+    public static final int PHASE_ASCENT = 3;
+
+    public static final String[] PHASE_NAMES =
+            {"Surface", "Descent", "Park", "Ascent"};
+
+    private static final double SURFACE_DEPTH = 0.5; //m
+    private static final double RATE_DEADBAND = 0.02; //m/s
+
+    //Bins are centered on multiples of the width, the outer bins also hold
+    //everything beyond +-1.0
+    private static final int HISTOGRAM_BIN_WIDTH = 5; //hundredths
+    private static final int HISTOGRAM_HALF_BINS = 20; //each side of zero
+    private static final int HISTOGRAM_BINS = 2 * HISTOGRAM_HALF_BINS + 1;
+
+    private static final long MAX_CHUNK_BYTES = 64 * 1024 * 1024;
+    private static final int HEADER_SCAN_BYTES = 64 * 1024;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    //Instance Variables
+    private String[] columnNames;
+    private int depthColumn;
+    private int timeColumn;
+
+    private ChunkSummary total;
+    private ArrayList<long[]> phaseBoundaries; //{row, phase}
+    private ArrayList<double[]> phaseBoundaryValues; //{time, depth}
+
+
+    /***************************************************************************
+     * analyze
+     *
+     * Maps and parses the whole file. Columns that don't exist are ignored.
+     * Without a time column rates are per row instead of per second and
+     * phases aren't classified, the rate deadband is in m/s.
+     **************************************************************************/
+    public void analyze(String fileName, String depthName, String timeName)
+            throws IOException
+    {
+        try(RandomAccessFile file = new RandomAccessFile(fileName, "r");
+            FileChannel channel = file.getChannel())
+        {
+            long fileSize = channel.size();
+            long dataStart = readHeader(channel, fileSize);
+
+            this.depthColumn = findColumn(depthName);
+            this.timeColumn = findColumn(timeName);
+
+            //Chunk boundaries, moved forward onto the start of a line
+            int threads = Runtime.getRuntime().availableProcessors();
+            long chunkSize = Math.max(1, Math.min(MAX_CHUNK_BYTES,
+                    (fileSize - dataStart) / (threads * 4L) + 1));
+
+            ArrayList<Long> starts = new ArrayList<>();
+            long position = dataStart;
+
+            while(position < fileSize)
+            {
+                starts.add(position);
+                position = nextLineStart(channel,
+                        Math.min(fileSize, position + chunkSize), fileSize);
+            }
+
+            starts.add(fileSize);
+
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            ArrayList<Future<ChunkSummary>> futures = new ArrayList<>();
+
+            for(int i = 0; i < starts.size() - 1; i++)
+            {
+                final long start = starts.get(i);
+                final long end = starts.get(i + 1);
+
+                futures.add(pool.submit(() -> parseChunk(channel, start, end)));
+            }
+
+            ArrayList<ChunkSummary> chunks = new ArrayList<>();
+
+            try
+            {
+                for(Future<ChunkSummary> future : futures)
+                {
+                    chunks.add(future.get());
+                }
+            }
+            catch(InterruptedException | ExecutionException e)
+            {
+                throw new IOException("Recorder Analyzer Error: "
+                        + "failed to parse " + fileName, e);
+            }
+            finally
+            {
+                pool.shutdown();
+            }
+
+            merge(chunks);
+        }
+    }
+
+    /***************************************************************************
+     * readHeader
+     *
+     * Skips the Recorder header block up to the first blank line, reads the
+     * column names line and returns the offset of the first data row.
+     **************************************************************************/
+    private long readHeader(FileChannel channel, long fileSize)
+            throws IOException
+    {
+        int length = (int) Math.min(fileSize, HEADER_SCAN_BYTES);
+        MappedByteBuffer header =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+
+        int lineStart = 0;
+        boolean blankLineSeen = false;
+
+        for(int i = 0; i < length; i++)
+        {
+            if(header.get(i) != '\n')
+                continue;
+
+            int lineEnd = i;
+
+            if(lineEnd > lineStart && header.get(lineEnd - 1) == '\r')
+                lineEnd--;
+
+            if(blankLineSeen)
+            {
+                byte[] names = new byte[lineEnd - lineStart];
+                header.get(lineStart, names);
+
+                String[] split = new String(names, StandardCharsets.UTF_8)
+                        .split(",");
+
+                this.columnNames = new String[split.length];
+
+                for(int c = 0; c < split.length; c++)
+                {
+                    columnNames[c] = split[c].trim();
+                }
+
+                return i + 1;
+            }
+
+            blankLineSeen = (lineEnd == lineStart);
+            lineStart = i + 1;
+        }
+
+        throw new IOException("Recorder Analyzer Error: "
+                + "no column names found in the file header");
+    }
+
+    /***************************************************************************
+     * findColumn
+     **************************************************************************/
+    private int findColumn(String name)
+    {
+        for(int i = 0; name != null && i < columnNames.length; i++)
+        {
+            if(name.equalsIgnoreCase(columnNames[i]))
+                return i;
+        }
+
+        return -1;
+    }
+
+    /***************************************************************************
+     * nextLineStart
+     *
+     * Returns the offset just after the first newline at or after position
+     **************************************************************************/
+    private long nextLineStart(FileChannel channel, long position,
+                               long fileSize) throws IOException
+    {
+        while(position < fileSize)
+        {
+            long length = Math.min(4096, fileSize - position);
+            MappedByteBuffer window = channel.map(
+                    FileChannel.MapMode.READ_ONLY, position, length);
+
+            for(int i = 0; i < length; i++)
+            {
+                if(window.get(i) == '\n')
+                    return position + i + 1;
+            }
+
+            position += length;
+        }
+
+        return fileSize;
+    }
+
+    /***************************************************************************
+     * parseChunk
+     *
+     * Parses every line in [start, end), which must begin on a line start
+     **************************************************************************/
+    private ChunkSummary parseChunk(FileChannel channel, long start, long end)
+            throws IOException
+    {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                start, end - start);
+
+        int columns = columnNames.length;
+        ChunkSummary summary = new ChunkSummary(columns);
+        double[] row = new double[columns];
+
+        int length = buffer.limit();
+        int position = 0;
+
+        while(position < length)
+        {
+            //Blank lines are skipped
+            if(buffer.get(position) == '\n' || buffer.get(position) == '\r')
+            {
+                position++;
+                continue;
+            }
+
+            //One line, field by field
+            int column = 0;
+
+            for(int c = 0; c < columns; c++)
+            {
+                row[c] = Double.NaN;
+            }
+
+            while(position < length)
+            {
+                //Skip leading whitespace
+                byte b = buffer.get(position);
+
+                while((b == ' ' || b == '\t') && ++position < length)
+                {
+                    b = buffer.get(position);
+                }
+
+                int fieldStart = position;
+
+                while(position < length)
+                {
+                    b = buffer.get(position);
+
+                    if(b == ',' || b == '\n')
+                        break;
+
+                    position++;
+                }
+
+                if(column < columns)
+                {
+                    row[column] = parseNumber(buffer, fieldStart, position);
+                }
+
+                column++;
+
+                if(position >= length || buffer.get(position) == '\n')
+                {
+                    position++;
+                    break;
+                }
+
+                position++; //Skip the comma
+            }
+
+            summary.addRow(row, depthColumn, timeColumn);
+        }
+
+        return summary;
+    }
+
+    /***************************************************************************
+     * parseNumber
+     *
+     * Parses a decimal number such as -12.5 or 1.0E-5 from bytes. Returns NaN
+     * for anything that isn't a plain number.
+     **************************************************************************/
+    static double parseNumber(MappedByteBuffer buffer, int start, int end)
+    {
+        while(end > start && (buffer.get(end - 1) == ' '
+                || buffer.get(end - 1) == '\r'))
+        {
+            end--;
+        }
+
+        if(start >= end)
+            return Double.NaN;
+
+        int position = start;
+        boolean negative = false;
+
+        if(buffer.get(position) == '-' || buffer.get(position) == '+')
+        {
+            negative = buffer.get(position) == '-';
+            position++;
+        }
+
+        long mantissa = 0;
+        int exponent = 0;
+        int digits = 0;
+        boolean fraction = false;
+
+        while(position < end)
+        {
+            byte b = buffer.get(position);
+
+            if(b >= '0' && b <= '9')
+            {
+                if(mantissa < 100_000_000_000_000_000L)
+                {
+                    mantissa = mantissa * 10 + (b - '0');
+
+                    if(fraction)
+                        exponent--;
+                }
+                else if(!fraction)
+                {
+                    exponent++; //Digit dropped, keep the magnitude
+                }
+
+                digits++;
+            }
+            else if(b == '.' && !fraction)
+            {
+                fraction = true;
+            }
+            else
+            {
+                break;
+            }
+
+            position++;
+        }
+
+        if(digits == 0)
+            return Double.NaN;
+
+        if(position < end)
+        {
+            byte b = buffer.get(position);
+
+            if(b != 'e' && b != 'E')
+                return Double.NaN;
+
+            position++;
+
+            boolean negativeExponent = false;
+
+            if(position < end && (buffer.get(position) == '-'
+                    || buffer.get(position) == '+'))
+            {
+                negativeExponent = buffer.get(position) == '-';
+                position++;
+            }
+
+            int explicitExponent = 0;
+
+            if(position >= end)
+                return Double.NaN;
+
+            while(position < end)
+            {
+                b = buffer.get(position);
+
+                if(b < '0' || b > '9')
+                    return Double.NaN;
+
+                explicitExponent = explicitExponent * 10 + (b - '0');
+                position++;
+            }
+
+            exponent += negativeExponent ? -explicitExponent
+                    : explicitExponent;
+        }
+
+        double value = mantissa;
+
+        if(exponent > 0)
+        {
+            value *= exponent < POWERS_OF_TEN.length
+                    ? POWERS_OF_TEN[exponent] : Math.pow(10, exponent);
+        }
+        else if(exponent < 0)
+        {
+            value /= -exponent < POWERS_OF_TEN.length
+                    ? POWERS_OF_TEN[-exponent] : Math.pow(10, -exponent);
+        }
+
+        return negative ? -value : value;
+    }
+
+    /***************************************************************************
+     * merge
+     *
+     * Combines the chunk summaries in file order. Rates and phase changes
+     * across chunk boundaries are computed here from the edge rows.
+     **************************************************************************/
+    private void merge(ArrayList<ChunkSummary> chunks)
+    {
+        this.total = new ChunkSummary(columnNames.length);
+        this.phaseBoundaries = new ArrayList<>();
+        this.phaseBoundaryValues = new ArrayList<>();
+
+        int currentPhase = -1;
+        long rowOffset = 0;
+        long previousRowOffset = 0;
+        ChunkSummary previous = null;
+
+        for(ChunkSummary chunk : chunks)
+        {
+            total.combine(chunk);
+
+            //Rate between the last row of the previous chunk and this one
+            if(previous != null && previous.rows > 0 && chunk.rows > 0)
+            {
+                double lastTime = previous.lastTime;
+                double firstTime = chunk.firstTime;
+
+                //Row numbers are chunk relative
+                if(timeColumn < 0)
+                {
+                    lastTime += previousRowOffset;
+                    firstTime += rowOffset;
+                }
+
+                double rate = ChunkSummary.getRate(previous.lastDepth,
+                        lastTime, chunk.firstDepth, firstTime);
+
+                if(!Double.isNaN(rate))
+                {
+                    total.addRate(rate);
+                }
+
+                if(!Double.isNaN(rate) && timeColumn >= 0)
+                {
+                    int phase = classify(chunk.firstDepth, rate);
+
+                    if(phase != currentPhase)
+                    {
+                        addBoundary(rowOffset, phase, chunk.firstTime,
+                                chunk.firstDepth);
+                        currentPhase = phase;
+                    }
+                }
+            }
+
+            for(int i = 0; i < chunk.phaseCount; i++)
+            {
+                if(chunk.phases[i] != currentPhase)
+                {
+                    addBoundary(rowOffset + chunk.phaseRows[i],
+                            chunk.phases[i], chunk.phaseTimes[i],
+                            chunk.phaseDepths[i]);
+                    currentPhase = chunk.phases[i];
+                }
+            }
+
+            if(chunk.rows > 0)
+            {
+                previous = chunk;
+                previousRowOffset = rowOffset;
+            }
+
+            rowOffset += chunk.rows;
+        }
+    }
+
+    /***************************************************************************
+     * addBoundary
+     **************************************************************************/
+    private void addBoundary(long row, int phase, double time, double depth)
+    {
+        phaseBoundaries.add(new long[] {row, phase});
+        phaseBoundaryValues.add(new double[] {time, depth});
+    }
+
+    /***************************************************************************
+     * classify
+     *
+     * Dive phase from depth (m) and vertical rate (positive is sinking)
+     **************************************************************************/
+    static int classify(double depth, double rate)
+    {
+        if(depth < SURFACE_DEPTH)
+            return PHASE_SURFACE;
+        if(rate > RATE_DEADBAND)
+            return PHASE_DESCENT;
+        if(rate < -RATE_DEADBAND)
+            return PHASE_ASCENT;
+
+        return PHASE_PARK;
+    }
+
+    /***************************************************************************
+     * printReport
+     **************************************************************************/
+    public void printReport()
+    {
+        System.out.println("Rows: " + total.rows);
+        System.out.println();
+        System.out.println("Column, Count, Min, Max, Mean, Std Dev");
+
+        for(int c = 0; c < columnNames.length; c++)
+        {
+            long count = total.count[c];
+
+            if(count == 0)
+            {
+                System.out.println(columnNames[c] + ", 0, , , , ");
+                continue;
+            }
+
+            double mean = total.mean[c];
+            double deviation = Math.sqrt(total.m2[c] / count);
+
+            System.out.println(columnNames[c] + ", " + count + ", "
+                    + total.min[c] + ", " + total.max[c] + ", " + mean
+                    + ", " + deviation);
+        }
+
+        if(depthColumn < 0)
+        {
+            System.out.println();
+            System.out.println("No depth column, phases and rates skipped");
+            return;
+        }
+
+        System.out.println();
+
+        if(timeColumn < 0)
+        {
+            System.out.println("No time column, phases skipped");
+        }
+        else
+        {
+            System.out.println("Phase Boundaries");
+            System.out.println("Row, Time, Depth, Phase");
+
+            for(int i = 0; i < phaseBoundaries.size(); i++)
+            {
+                long[] boundary = phaseBoundaries.get(i);
+                double[] values = phaseBoundaryValues.get(i);
+
+                System.out.println(boundary[0] + ", " + values[0] + ", "
+                        + values[1] + ", " + PHASE_NAMES[(int) boundary[1]]);
+            }
+        }
+
+        System.out.println();
+        System.out.println("Rate Histogram ("
+                + (timeColumn < 0 ? "m/row" : "m/s") + ", bin centers)");
+
+        for(int i = 0; i < HISTOGRAM_BINS; i++)
+        {
+            if(total.histogram[i] == 0)
+                continue;
+
+            //From the integer index, so labels are exact
+            double center = (i - HISTOGRAM_HALF_BINS) * HISTOGRAM_BIN_WIDTH
+                    / 100.0;
+
+            System.out.println(center + ", " + total.histogram[i]);
+        }
+    }
+
+
+    /***************************************************************************
+     * Chunk Summary Class
+     *
+     * Everything one chunk contributes. Phase changes are stored with chunk
+     * relative row numbers and fixed up in merge().
+     **************************************************************************/
+    private static class ChunkSummary
+    {
+        long rows;
+
+        long[] count;
+        double[] min;
+        double[] max;
+        double[] mean;
+        double[] m2; //sum of squared differences from the mean
+
+        long[] histogram;
+
+        double firstDepth = Double.NaN;
+        double firstTime = Double.NaN;
+        double lastDepth = Double.NaN;
+        double lastTime = Double.NaN;
+
+        int phaseCount;
+        int lastPhase = -1;
+        long[] phaseRows = new long[16];
+        int[] phases = new int[16];
+        double[] phaseTimes = new double[16];
+        double[] phaseDepths = new double[16];
+
+        ChunkSummary(int columns)
+        {
+            this.count = new long[columns];
+            this.min = new double[columns];
+            this.max = new double[columns];
+            this.mean = new double[columns];
+            this.m2 = new double[columns];
+            this.histogram = new long[HISTOGRAM_BINS];
+
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        }
+
+        /***********************************************************************
+         * addRow
+         **********************************************************************/
+        void addRow(double[] row, int depthColumn, int timeColumn)
+        {
+            for(int c = 0; c < row.length; c++)
+            {
+                double value = row[c];
+
+                if(Double.isNaN(value))
+                    continue;
+
+                //Welford
+                count[c]++;
+                double delta = value - mean[c];
+                mean[c] += delta / count[c];
+                m2[c] += delta * (value - mean[c]);
+
+                if(value < min[c])
+                    min[c] = value;
+                if(value > max[c])
+                    max[c] = value;
+            }
+
+            if(depthColumn >= 0)
+            {
+                double depth = row[depthColumn];
+                double time = timeColumn < 0 ? rows : row[timeColumn];
+
+                if(Double.isNaN(firstDepth) || Double.isNaN(firstTime))
+                {
+                    firstDepth = depth;
+                    firstTime = time;
+                }
+                else
+                {
+                    double rate = getRate(lastDepth, lastTime, depth, time);
+
+                    if(!Double.isNaN(rate))
+                    {
+                        addRate(rate);
+                    }
+
+                    if(!Double.isNaN(rate) && timeColumn >= 0)
+                    {
+                        int phase = classify(depth, rate);
+
+                        if(phase != lastPhase)
+                            addPhase(rows, phase, time, depth);
+                    }
+                }
+
+                if(!Double.isNaN(depth) && !Double.isNaN(time))
+                {
+                    lastDepth = depth;
+                    lastTime = time;
+                }
+            }
+
+            rows++;
+        }
+
+        /***********************************************************************
+         * getRate
+         *
+         * Without a time column times are row numbers, which gives m/row.
+         * NaN when either sample is missing or time doesn't advance, callers
+         * skip those.
+         **********************************************************************/
+        static double getRate(double depth0, double time0,
+                              double depth1, double time1)
+        {
+            double elapsed = time1 - time0;
+
+            if(Double.isNaN(elapsed) || elapsed <= 0)
+                return Double.NaN;
+
+            return (depth1 - depth0) / elapsed;
+        }
+
+        /***********************************************************************
+         * addRate
+         **********************************************************************/
+        void addRate(double rate)
+        {
+            long bin = Math.round(rate * 100 / HISTOGRAM_BIN_WIDTH)
+                    + HISTOGRAM_HALF_BINS;
+
+            histogram[(int) Math.max(0, Math.min(HISTOGRAM_BINS - 1, bin))]++;
+        }
+
+        /***********************************************************************
+         * addPhase
+         **********************************************************************/
+        void addPhase(long row, int phase, double time, double depth)
+        {
+            if(phaseCount == phases.length)
+            {
+                phaseRows = Arrays.copyOf(phaseRows, phaseCount * 2);
+                phases = Arrays.copyOf(phases, phaseCount * 2);
+                phaseTimes = Arrays.copyOf(phaseTimes,
+                        phaseCount * 2);
+                phaseDepths = Arrays.copyOf(phaseDepths,
+                        phaseCount * 2);
+            }
+
+            phaseRows[phaseCount] = row;
+            phases[phaseCount] = phase;
+            phaseTimes[phaseCount] = time;
+            phaseDepths[phaseCount] = depth;
+            phaseCount++;
+
+            lastPhase = phase;
+        }
+
+        /***********************************************************************
+         * combine - adds the statistics and histogram of another chunk. Mean
+         * and m2 are merged with Chan's parallel formula.
+         **********************************************************************/
+        void combine(ChunkSummary other)
+        {
+            rows += other.rows;
+
+            for(int c = 0; c < count.length; c++)
+            {
+                long combined = count[c] + other.count[c];
+
+                if(other.count[c] > 0)
+                {
+                    double delta = other.mean[c] - mean[c];
+                    double weight = (double) other.count[c] / combined;
+
+                    mean[c] += delta * weight;
+                    m2[c] += other.m2[c] + delta * delta * count[c] * weight;
+                }
+
+                count[c] = combined;
+                min[c] = Math.min(min[c], other.min[c]);
+                max[c] = Math.max(max[c], other.max[c]);
+            }
+
+            for(int i = 0; i < HISTOGRAM_BINS; i++)
+            {
+                histogram[i] += other.histogram[i];
+            }
+        }
+    }
+
+
+    /***************************************************************************
+     * System main
+     **************************************************************************/
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 1)
+        {
+            System.out.println(
+                    "Usage: java RecorderAnalyzer <file> [depth column] "
+                            + "[time column]");
+            return;
+        }
+
+        String depthName = args.length > 1 ? args[1] : "Depth";
+        String timeName = args.length > 2 ? args[2] : "Time";
+
+        long startTime = System.nanoTime();
+
+        RecorderAnalyzer analyzer = new RecorderAnalyzer();
+        analyzer.analyze(args[0], depthName, timeName);
+        analyzer.printReport();
+
+        System.out.println();
+        System.out.println("Analysis Time: "
+                + (System.nanoTime() - startTime) / 1000000 + " ms");
+    }
+}
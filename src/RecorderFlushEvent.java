@@ -0,0 +1,29 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/***************************************************************************
+ * Recorder Flush Event
+ *
+ * Flight Recorder event covering one Recorder.writeToFile() call. Disabled
+ * by default, enable it with jellyfish.jfc.
+ **************************************************************************/
+@Name("jellyfish.RecorderFlush")
+@Label("Recorder Flush")
+@Category("Jellyfish")
+@Description("Buffered Recorder lines written and flushed to the output file")
+@Enabled(false)
+@StackTrace(false)
+public class RecorderFlushEvent extends jdk.jfr.Event
+{
+    @Label("Lines")
+    int lines;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+}
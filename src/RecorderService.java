@@ -0,0 +1,415 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/***************************************************************************
+ * Recorder Service Class
+ *
+ * Shared output for many concurrent missions. Output is partitioned into a
+ * fixed number of shard files, each mission always goes to the same shard,
+ * so the number of open files doesn't grow with the number of missions.
+ *
+ * Every shard has a bounded queue and one writer thread. The writer drains
+ * everything queued, writes it with a single channel write and, if the
+ * service is durable, a single force: a group commit. A full queue blocks
+ * the submitting Recorder, which bounds memory use. Once close() is called
+ * submits are rejected.
+ *
+ * Each block in a shard file starts with a tag line:
+ *   Mission:, <mission id>, <number of lines>
+ **************************************************************************/
+public class RecorderService
+{
+    //Constants
+    public final boolean DEBUG = true;
+
+    private final String SERVICE_VERSION = "0.01";
+    private final int QUEUE_CAPACITY = 1024;
+    private final int INITIAL_WRITE_BUFFER = 64 * 1024;
+
+    //Instance Variables
+    private FileChannel[] channels;
+    private ArrayList<ArrayBlockingQueue<Block>> queues;
+    private Thread[] writers;
+
+    private boolean durable;
+
+    //Submits hold the read lock, close() takes the write lock, so no block
+    //is queued behind the END_OF_STREAM marker
+    private ReentrantReadWriteLock closeLock;
+    private boolean closed;
+
+    private long blocksWritten;
+    private long blocksDropped;
+    private long blocksFailed;
+    private long commits;
+    private long bytesWritten;
+
+    /***************************************************************************
+     * Block Class - lines from one mission, tagged with its id
+     **************************************************************************/
+    private static class Block
+    {
+        final String missionId;
+        final String[] lines;
+
+        Block(String missionId, String[] lines)
+        {
+            this.missionId = missionId;
+            this.lines = lines;
+        }
+    }
+
+    //Queued after close() to stop a writer
+    private static final Block END_OF_STREAM = new Block(null, null);
+
+    /***************************************************************************
+     * Recorder Service Constructor
+     *
+     * Creates baseName-0.csv to baseName-(shards-1).csv. A durable service
+     * forces every group commit to disk.
+     **************************************************************************/
+    public RecorderService(String baseName, int shards, boolean durable)
+            throws IOException
+    {
+        this.durable = durable;
+
+        this.channels = new FileChannel[shards];
+        this.queues = new ArrayList<>(shards);
+        this.writers = new Thread[shards];
+
+        this.closeLock = new ReentrantReadWriteLock();
+        this.closed = false;
+
+        for(int i = 0; i < shards; i++)
+        {
+            channels[i] = FileChannel.open(Paths.get(baseName + "-" + i
+                            + ".csv"), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+
+            //File Header, same as a single Recorder file
+            String header = "Jellyfish Simulator File Output:\n"
+                    + "Current Recorder Service Version:, " + SERVICE_VERSION
+                    + "\n" + "Shard:, " + i + ", " + shards + "\n"
+                    + "Start Time:, " + System.currentTimeMillis() + "\n"
+                    + "\n";
+
+            ByteBuffer headerBuffer = ByteBuffer.wrap(
+                    header.getBytes(StandardCharsets.UTF_8));
+
+            while(headerBuffer.hasRemaining())
+            {
+                channels[i].write(headerBuffer);
+            }
+
+            queues.add(new ArrayBlockingQueue<>(QUEUE_CAPACITY));
+
+            final int shard = i;
+            writers[i] = new Thread(() -> writeLoop(shard),
+                    "RecorderService-" + i);
+            writers[i].setDaemon(true);
+            writers[i].start();
+        }
+    }
+
+    /***************************************************************************
+     * submit
+     *
+     * Queues the first count lines for the mission's shard. The lines are
+     * copied, so the caller may reuse its buffer. Blocks while the shard's
+     * queue is full. Throws IllegalStateException after close(). If the
+     * caller is interrupted while waiting the block is dropped and counted.
+     **************************************************************************/
+    public void submit(String missionId, String[] lines, int count)
+    {
+        Block block = new Block(missionId, Arrays.copyOf(lines, count));
+
+        closeLock.readLock().lock();
+
+        try
+        {
+            if(closed)
+            {
+                throw new IllegalStateException("Recorder Service Error: "
+                        + "submit for " + missionId + " after close");
+            }
+
+            queues.get(getShard(missionId)).put(block);
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+
+            synchronized(this)
+            {
+                blocksDropped++;
+            }
+
+            if(DEBUG)
+                System.out.println("Recorder Service Error: interrupted, "
+                        + "dropped " + count + " lines of " + missionId);
+        }
+        finally
+        {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    /***************************************************************************
+     * getShard
+     **************************************************************************/
+    public int getShard(String missionId)
+    {
+        return Math.floorMod(missionId.hashCode(), channels.length);
+    }
+
+    /***************************************************************************
+     * writeLoop
+     *
+     * Writer thread of one shard. Waits for a block, then commits it together
+     * with everything else that queued up in the meantime.
+     **************************************************************************/
+    private void writeLoop(int shard)
+    {
+        ArrayBlockingQueue<Block> queue = queues.get(shard);
+        FileChannel channel = channels[shard];
+
+        ArrayList<Block> batch = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        ByteBuffer writeBuffer = ByteBuffer.allocateDirect(INITIAL_WRITE_BUFFER);
+
+        boolean running = true;
+
+        while(running)
+        {
+            batch.clear();
+
+            try
+            {
+                batch.add(queue.take());
+            }
+            catch(InterruptedException e)
+            {
+                running = false;
+            }
+
+            queue.drainTo(batch);
+
+            text.setLength(0);
+            int blocks = 0;
+
+            for(Block block : batch)
+            {
+                if(block == END_OF_STREAM)
+                {
+                    running = false;
+                    continue;
+                }
+
+                text.append("Mission:, ").append(block.missionId)
+                        .append(", ").append(block.lines.length).append('\n');
+
+                for(String line : block.lines)
+                {
+                    text.append(line).append('\n');
+                }
+
+                blocks++;
+            }
+
+            if(blocks == 0)
+                continue;
+
+            byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+
+            if(bytes.length > writeBuffer.capacity())
+            {
+                writeBuffer = ByteBuffer.allocateDirect(
+                        Math.max(bytes.length, writeBuffer.capacity() * 2));
+            }
+
+            writeBuffer.clear();
+            writeBuffer.put(bytes);
+            writeBuffer.flip();
+
+            boolean written = true;
+
+            try
+            {
+                while(writeBuffer.hasRemaining())
+                {
+                    channel.write(writeBuffer);
+                }
+
+                if(durable)
+                    channel.force(false);
+            }
+            catch(IOException e)
+            {
+                written = false;
+                e.printStackTrace();
+            }
+
+            synchronized(this)
+            {
+                if(written)
+                {
+                    blocksWritten += blocks;
+                    commits++;
+                    bytesWritten += bytes.length;
+                }
+                else
+                {
+                    blocksFailed += blocks;
+                }
+            }
+        }
+    }
+
+    /***************************************************************************
+     * close
+     *
+     * Writes everything still queued, then closes the shard files. Later
+     * calls do nothing. Waits through interrupts, a writer interrupted in the
+     * middle of a write would close its channel and lose the last commit,
+     * and restores the interrupt status once every shard is closed.
+     **************************************************************************/
+    public void close()
+    {
+        closeLock.writeLock().lock();
+
+        try
+        {
+            if(closed)
+                return;
+
+            this.closed = true;
+        }
+        finally
+        {
+            closeLock.writeLock().unlock();
+        }
+
+        boolean interrupted = false;
+
+        for(int i = 0; i < queues.size(); i++)
+        {
+            while(true)
+            {
+                try
+                {
+                    queues.get(i).put(END_OF_STREAM);
+                    break;
+                }
+                catch(InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+        }
+
+        for(int i = 0; i < writers.length; i++)
+        {
+            while(true)
+            {
+                try
+                {
+                    writers[i].join();
+                    break;
+                }
+                catch(InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+
+            try
+            {
+                channels[i].force(true);
+                channels[i].close();
+            }
+            catch(IOException e)
+            {
+                e.printStackTrace();
+            }
+        }
+
+        if(interrupted)
+            Thread.currentThread().interrupt();
+
+        if(DEBUG)
+            System.out.println(getStatistics());
+    }
+
+    /***************************************************************************
+     * getStatistics
+     **************************************************************************/
+    public synchronized String getStatistics()
+    {
+        return "Recorder Service | Blocks: " + blocksWritten
+                + " | Dropped: " + blocksDropped
+                + " | Failed: " + blocksFailed
+                + " | Group Commits: " + commits
+                + " | Bytes: " + bytesWritten;
+    }
+
+
+    /***************************************************************************
+     * Testing main
+     *
+     * Records a few thousand concurrent missions into four shards
+     **************************************************************************/
+    public static void main(String[] args) throws Exception
+    {
+        RecorderService service = new RecorderService("OutputData", 4, true);
+
+        int missions = 2000;
+        Thread[] threads = new Thread[8];
+
+        long startTime = System.nanoTime();
+
+        for(int t = 0; t < threads.length; t++)
+        {
+            final int first = t;
+
+            threads[t] = new Thread(() ->
+            {
+                for(int m = first; m < missions; m += threads.length)
+                {
+                    Recorder recorder = new Recorder(service, "Mission-" + m);
+
+                    recorder.updateVariable("Depth", 0);
+                    recorder.writeVariableNames();
+
+                    for(int i = 0; i < 500; i++)
+                    {
+                        recorder.updateVariable("Depth", i * 0.1);
+                        recorder.writeVariables();
+                    }
+
+                    recorder.stopRecording();
+                }
+            });
+
+            threads[t].start();
+        }
+
+        for(Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        service.close();
+
+        System.out.println("Recording Time: "
+                + (System.nanoTime() - startTime) / 1000000 + " ms");
+    }
+}
@@ -0,0 +1,434 @@
+/***************************************************************************
+ * Sensitivity Simulator Class
+ *
+ * Forward-mode automatic differentiation of the Simulator physics. Every
+ * quantity is a dual number: a value plus a tangent array holding its
+ * derivative with respect to each physical parameter. One run therefore
+ * yields the trajectory and the gradient of depth, velocity and max depth
+ * with respect to all parameters.
+ *
+ * All tangent arrays are allocated in the constructor, a step allocates
+ * nothing.
+ *
+ * Differences from the Simulator:
+ *   - water density is always the WATER_DENSITY parameter, the density
+ *     of an OceanField and its currents aren't modeled
+ *   - BUOYANCY_ENGINE_PISTON_LENGTH is an independent parameter. The
+ *     Simulator derives it as 0.5 * BUOYANCY_ENGINE_LENGTH, so here the
+ *     gradient with respect to BUOYANCY_ENGINE_LENGTH leaves the piston
+ *     length fixed.
+ **************************************************************************/
+public class SensitivitySimulator
+{
+    //______________________________________________________________________
+    // Parameter Indices
+
+    public static final int WATER_DENSITY = 0;
+    public static final int GRAVITATIONAL_CONSTANT = 1;
+    public static final int INSTRUMENT_COMPARTMENT_MASS = 2;
+    public static final int BUOYANCY_ENGINE_MASS_EMPTY = 3;
+    public static final int INSTRUMENT_BAY_OD = 4;
+    public static final int INSTRUMENT_BAY_LENGTH = 5;
+    public static final int BUOYANCY_ENGINE_OD = 6;
+    public static final int BUOYANCY_ENGINE_ID = 7;
+    public static final int BUOYANCY_ENGINE_LENGTH = 8;
+    public static final int BUOYANCY_ENGINE_PISTON_LENGTH = 9;
+
+    public static final int NUMBER_OF_PARAMETERS = 10;
+
+    public static final String[] PARAMETER_NAMES = {
+            "WATER_DENSITY",
+            "GRAVITATIONAL_CONSTANT",
+            "INSTRUMENT_COMPARTMENT_MASS",
+            "BUOYANCY_ENGINE_MASS_EMPTY",
+            "INSTRUMENT_BAY_OD",
+            "INSTRUMENT_BAY_LENGTH",
+            "BUOYANCY_ENGINE_OD",
+            "BUOYANCY_ENGINE_ID",
+            "BUOYANCY_ENGINE_LENGTH",
+            "BUOYANCY_ENGINE_PISTON_LENGTH"
+    };
+
+    //______________________________________________________________________
+    // Various Constants
+
+    private final int NUMBER_OF_CYLINDERS = 3;
+
+    //______________________________________________________________________
+    // Instance Variables - each value has a matching tangent array
+
+    private double[] parameters;
+
+    private double trueDepth;
+    private double[] depthTangent;
+
+    private double trueVelocity;
+    private double[] velocityTangent;
+
+    private double trueAcceleration;
+    private double[] accelerationTangent;
+
+    private double maxDepth;
+    private double[] maxDepthTangent;
+
+    //______________________________________________________________________
+    // Scratch tangents for the intermediate physics quantities
+
+    private double[] volumeTangent;
+    private double[] pistonVolumeTangent;
+    private double[] massTangent;
+    private double[] forceTangent;
+
+    private BuoyancyEngine[] buoyancyEngines;
+
+
+    /***************************************************************************
+     * Sensitivity Simulator Constructor
+     *
+     * Parameters are given in PARAMETER_NAMES order
+     **************************************************************************/
+    public SensitivitySimulator(double[] parameters)
+    {
+        this.parameters = parameters.clone();
+
+        this.depthTangent = new double[NUMBER_OF_PARAMETERS];
+        this.velocityTangent = new double[NUMBER_OF_PARAMETERS];
+        this.accelerationTangent = new double[NUMBER_OF_PARAMETERS];
+        this.maxDepthTangent = new double[NUMBER_OF_PARAMETERS];
+
+        this.volumeTangent = new double[NUMBER_OF_PARAMETERS];
+        this.pistonVolumeTangent = new double[NUMBER_OF_PARAMETERS];
+        this.massTangent = new double[NUMBER_OF_PARAMETERS];
+        this.forceTangent = new double[NUMBER_OF_PARAMETERS];
+    }
+
+    /***************************************************************************
+     * Sensitivity Simulator Constructor - Simulator Overload
+     *
+     * Uses the same physical constants as the given Simulator
+     **************************************************************************/
+    public SensitivitySimulator(Simulator simulator)
+    {
+        this(simulator.getParameters());
+    }
+
+    /***************************************************************************
+     * update()
+     *
+     * Same as Simulator.update() with an explicit time step in milliseconds.
+     * At the surface depth and velocity are pinned to zero, which makes their
+     * derivatives zero as well.
+     **************************************************************************/
+    public void update(double elapsedTime)
+    {
+        this.updatePosition(elapsedTime);
+
+        if(trueDepth < 0)
+        {
+            trueDepth = 0;
+            trueVelocity = 0;
+
+            for(int i = 0; i < NUMBER_OF_PARAMETERS; i++)
+            {
+                depthTangent[i] = 0;
+                velocityTangent[i] = 0;
+            }
+        }
+
+        if(trueDepth > maxDepth)
+        {
+            maxDepth = trueDepth;
+            System.arraycopy(depthTangent, 0, maxDepthTangent, 0,
+                    NUMBER_OF_PARAMETERS);
+        }
+    }
+
+    /***************************************************************************
+     * updatePosition
+     *
+     * Dual number version of Simulator.updatePosition(). The integration
+     * order is the same, so without an ocean field values match the
+     * Simulator at its default parameters.
+     **************************************************************************/
+    public void updatePosition(double elapsedTime)
+    {
+        elapsedTime /= 1000;
+
+        this.trueAcceleration = getAcceleration(accelerationTangent);
+
+        this.trueVelocity += this.trueAcceleration * elapsedTime;
+
+        this.trueDepth += this.trueVelocity * elapsedTime;
+
+        for(int i = 0; i < NUMBER_OF_PARAMETERS; i++)
+        {
+            velocityTangent[i] += accelerationTangent[i] * elapsedTime;
+            depthTangent[i] += velocityTangent[i] * elapsedTime;
+        }
+    }
+
+    /***************************************************************************
+     * Gets the acceleration and its tangent
+     *
+     * a = F / M
+     * da = (dF - a * dM) / M
+     **************************************************************************/
+    public double getAcceleration(double[] tangent)
+    {
+        double force = getNetForce(forceTangent);
+        double mass = getSystemMass(massTangent);
+
+        double acceleration = force / mass;
+
+        for(int i = 0; i < NUMBER_OF_PARAMETERS; i++)
+        {
+            tangent[i] = (forceTangent[i] - acceleration * massTangent[i])
+                    / mass;
+        }
+
+        return acceleration;
+    }
+
+    /***************************************************************************
+     * Gets the net force and its tangent
+     *
+     * F = Mg - density * V * g
+     **************************************************************************/
+    public double getNetForce(double[] tangent)
+    {
+        double density = parameters[WATER_DENSITY];
+        double g = parameters[GRAVITATIONAL_CONSTANT];
+
+        double mass = getSystemMass(massTangent);
+        double volume = getSystemVolume(volumeTangent);
+
+        for(int i = 0; i < NUMBER_OF_PARAMETERS; i++)
+        {
+            tangent[i] = g * massTangent[i] - density * g * volumeTangent[i];
+        }
+
+        tangent[WATER_DENSITY] -= volume * g;
+        tangent[GRAVITATIONAL_CONSTANT] += mass - density * volume;
+
+        return mass * g - density * volume * g;
+    }
+
+    /***************************************************************************
+     * Gets the buoyant force and its tangent
+     *
+     * Fb = density of liquid * displaced volume * g
+     **************************************************************************/
+    public double getBuoyantForce(double[] tangent)
+    {
+        double density = parameters[WATER_DENSITY];
+        double g = parameters[GRAVITATIONAL_CONSTANT];
+
+        double volume = getSystemVolume(volumeTangent);
+
+        for(int i = 0; i < NUMBER_OF_PARAMETERS; i++)
+        {
+            tangent[i] = density * g * volumeTangent[i];
+        }
+
+        tangent[WATER_DENSITY] += volume * g;
+        tangent[GRAVITATIONAL_CONSTANT] += density * volume;
+
+        return density * volume * g;
+    }
+
+    /***************************************************************************
+     * Gets the system's volume and its tangent
+     **************************************************************************/
+    public double getSystemVolume(double[] tangent)
+    {
+        double bayRadius = parameters[INSTRUMENT_BAY_OD] / 2;
+        double bayLength = parameters[INSTRUMENT_BAY_LENGTH];
+        double engineRadius = parameters[BUOYANCY_ENGINE_OD] / 2;
+        double engineLength = parameters[BUOYANCY_ENGINE_LENGTH];
+
+        clear(tangent);
+
+        tangent[INSTRUMENT_BAY_OD] = Math.PI * bayRadius * bayLength;
+        tangent[INSTRUMENT_BAY_LENGTH] = Math.PI * bayRadius * bayRadius;
+        tangent[BUOYANCY_ENGINE_OD] = NUMBER_OF_CYLINDERS
+                * Math.PI * engineRadius * engineLength;
+        tangent[BUOYANCY_ENGINE_LENGTH] = NUMBER_OF_CYLINDERS
+                * Math.PI * engineRadius * engineRadius;
+
+        return Math.PI * bayRadius * bayRadius * bayLength
+                + NUMBER_OF_CYLINDERS
+                * Math.PI * engineRadius * engineRadius * engineLength;
+    }
+
+    /***************************************************************************
+     * Gets the piston volume of one buoyancy engine and its tangent
+     **************************************************************************/
+    public double getPistonVolume(double[] tangent)
+    {
+        double pistonRadius = parameters[BUOYANCY_ENGINE_ID] / 2;
+        double pistonLength = parameters[BUOYANCY_ENGINE_PISTON_LENGTH];
+
+        clear(tangent);
+
+        tangent[BUOYANCY_ENGINE_ID] = Math.PI * pistonRadius * pistonLength;
+        tangent[BUOYANCY_ENGINE_PISTON_LENGTH] =
+                Math.PI * pistonRadius * pistonRadius;
+
+        return Math.PI * pistonRadius * pistonRadius * pistonLength;
+    }
+
+    /***************************************************************************
+     * Gets the system's mass and its tangent. The extension coefficients
+     * are inputs, not parameters, so they carry no tangent.
+     **************************************************************************/
+    public double getSystemMass(double[] tangent)
+    {
+        double density = parameters[WATER_DENSITY];
+
+        double fill = 0; //Number of pistons worth of water on board
+
+        if(buoyancyEngines == null)
+        {
+            System.out.println(
+                    "Sensitivity Simulator Error: BuoyancyEngines not initialized");
+        }
+        else
+        {
+            for (int i = 0; i < NUMBER_OF_CYLINDERS
+                    && i < buoyancyEngines.length; i++)
+            {
+                fill += 1 - buoyancyEngines[i].getExtensionCoefficient();
+            }
+        }
+
+        double pistonVolume = getPistonVolume(pistonVolumeTangent);
+
+        for(int i = 0; i < NUMBER_OF_PARAMETERS; i++)
+        {
+            tangent[i] = fill * density * pistonVolumeTangent[i];
+        }
+
+        tangent[INSTRUMENT_COMPARTMENT_MASS] += 1;
+        tangent[BUOYANCY_ENGINE_MASS_EMPTY] += NUMBER_OF_CYLINDERS;
+        tangent[WATER_DENSITY] += fill * pistonVolume;
+
+        return parameters[INSTRUMENT_COMPARTMENT_MASS]
+                + parameters[BUOYANCY_ENGINE_MASS_EMPTY] * NUMBER_OF_CYLINDERS
+                + fill * pistonVolume * density;
+    }
+
+    /***************************************************************************
+     * clear
+     **************************************************************************/
+    private void clear(double[] tangent)
+    {
+        for(int i = 0; i < NUMBER_OF_PARAMETERS; i++)
+        {
+            tangent[i] = 0;
+        }
+    }
+
+    /***************************************************************************
+     * Getters - the returned tangent arrays are live, don't modify them
+     **************************************************************************/
+    public double getDepth()
+    {
+        return this.trueDepth;
+    }
+
+    public double[] getDepthGradient()
+    {
+        return this.depthTangent;
+    }
+
+    public double getVelocity()
+    {
+        return this.trueVelocity;
+    }
+
+    public double[] getVelocityGradient()
+    {
+        return this.velocityTangent;
+    }
+
+    public double getMaxDepth()
+    {
+        return this.maxDepth;
+    }
+
+    public double[] getMaxDepthGradient()
+    {
+        return this.maxDepthTangent;
+    }
+
+    /***************************************************************************
+     * Setter - gets a reference to the buoyancy engine array
+     **************************************************************************/
+    public void setBuoyancyEngines(BuoyancyEngine[] buoyancyEngines)
+    {
+        this.buoyancyEngines = buoyancyEngines;
+    }
+
+
+    /***************************************************************************
+     * Testing main
+     *
+     * Runs a one minute descent and compares the final depth gradient with
+     * central finite differences.
+     **************************************************************************/
+    public static void main(String[] args)
+    {
+        double[] parameters = new Simulator().getParameters();
+
+        BuoyancyEngine[] engines = new BuoyancyEngine[3];
+
+        for(int i = 0; i < engines.length; i++)
+        {
+            engines[i] = new BuoyancyEngine();
+
+            for(int j = 0; j < 10; j++)
+            {
+                engines[i].sink();
+            }
+        }
+
+        SensitivitySimulator simulator = new SensitivitySimulator(parameters);
+        simulator.setBuoyancyEngines(engines);
+
+        for(int step = 0; step < 600; step++)
+        {
+            simulator.update(100);
+        }
+
+        System.out.println("Final Depth: " + simulator.getDepth());
+        System.out.println();
+
+        for(int i = 0; i < NUMBER_OF_PARAMETERS; i++)
+        {
+            double h = Math.abs(parameters[i]) * 1e-6;
+
+            double[] plus = parameters.clone();
+            double[] minus = parameters.clone();
+            plus[i] += h;
+            minus[i] -= h;
+
+            SensitivitySimulator up = new SensitivitySimulator(plus);
+            SensitivitySimulator down = new SensitivitySimulator(minus);
+            up.setBuoyancyEngines(engines);
+            down.setBuoyancyEngines(engines);
+
+            for(int step = 0; step < 600; step++)
+            {
+                up.update(100);
+                down.update(100);
+            }
+
+            double finiteDifference = (up.getDepth() - down.getDepth())
+                    / (2 * h);
+
+            System.out.println(PARAMETER_NAMES[i] + ": "
+                    + simulator.getDepthGradient()[i]
+                    + " | Finite Difference: " + finiteDifference);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/***************************************************************************
+ * Sensor Read Event
+ *
+ * Flight Recorder event covering one DepthSensor read. Disabled by default,
+ * enable it with jellyfish.jfc.
+ **************************************************************************/
+@Name("jellyfish.SensorRead")
+@Label("Sensor Read")
+@Category("Jellyfish")
+@Description("One depth reading from the Simulator or the hardware")
+@Enabled(false)
+@StackTrace(false)
+public class SensorReadEvent extends jdk.jfr.Event
+{
+    @Label("Source")
+    String source;
+
+    @Label("Depth (m)")
+    double depth;
+}
@@ -6,6 +6,8 @@ public class Simulator implements Runnable
     //______________________________________________________________________
     // Various Constants
 
+    public final String SIMULATOR_VERSION = "0.02";
+
     private final int NUMBER_OF_CYLINDERS = 3;
     private final double WATER_DENSITY = 997;
     private final double GRAVITATIONAL_CONSTANT = 9.81;
@@ -52,11 +54,17 @@ public class Simulator implements Runnable
     private double trueVelocity;
     private double trueAcceleration;
 
+    private double trueX; //m east
+    private double trueY; //m north
+
     private long lastNanoTime;
     private int counter = 0;
 
     private double extensionCoefficient;
 
+    private OceanField oceanField;
+    private double[] oceanSample = new double[OceanField.CHANNELS];
+
 
     //______________________________________________________________________
     // Shared components with the Control class - be careful!
@@ -106,16 +114,7 @@ public class Simulator implements Runnable
      **************************************************************************/
     public void update()
     {
-        double elapsedTime = this.getElapsedTime();
-
-        this.updatePosition(elapsedTime);
-
-
-        if(trueDepth < 0)
-        {
-            trueDepth = 0;
-            trueVelocity = 0;
-        }
+        this.update(this.getElapsedTime());
 
         if(counter % 100 == 0)
         {
@@ -139,18 +138,64 @@ public class Simulator implements Runnable
         counter++;
     }
 
+    /***************************************************************************
+     * update() - fixed step overload
+     *
+     * Same as update() with the elapsed time in milliseconds given by the
+     * caller, for running many floats faster than real time. Doesn't print
+     * the console output.
+     **************************************************************************/
+    public void update(double elapsedTime)
+    {
+        SimulatorStepEvent event = new SimulatorStepEvent();
+        event.begin();
+
+        this.updatePosition(elapsedTime);
+
+
+        if(trueDepth < 0)
+        {
+            trueDepth = 0;
+            trueVelocity = 0;
+        }
+
+        event.end();
+
+        if(event.shouldCommit())
+        {
+            event.elapsedTime = elapsedTime;
+            event.depth = trueDepth;
+            event.velocity = trueVelocity;
+            event.acceleration = trueAcceleration;
+            event.commit();
+        }
+    }
+
     /***************************************************************************
      * updatePosition
      *
      * The main physics call. Acceleration is calculated based on force
      * calculations. Velocity and Depth are then derived using the
-     * elapsed time.
+     * elapsed time. With an ocean field the float also drifts with the
+     * local current, the vertical current moves it on top of its own
+     * velocity.
      *
      **************************************************************************/
     public void updatePosition(double elapsedTime)
     {
         elapsedTime /= 1000;
 
+        if(oceanField != null)
+        {
+            oceanField.sample(trueX, trueY, Math.max(0, trueDepth),
+                    oceanSample);
+
+            this.trueX += oceanSample[OceanField.CURRENT_EAST] * elapsedTime;
+            this.trueY += oceanSample[OceanField.CURRENT_NORTH] * elapsedTime;
+            this.trueDepth += oceanSample[OceanField.CURRENT_DOWN]
+                    * elapsedTime;
+        }
+
         this.trueAcceleration = getAcceleration();
 
         this.trueVelocity += this.trueAcceleration * elapsedTime;
@@ -208,7 +253,19 @@ public class Simulator implements Runnable
      **************************************************************************/
     public double getBuoyantForce()
     {
-        return WATER_DENSITY * getSystemVolume() * GRAVITATIONAL_CONSTANT;
+        return getWaterDensity() * getSystemVolume() * GRAVITATIONAL_CONSTANT;
+    }
+
+    /***************************************************************************
+     * Gets the density of the surrounding water, from the ocean field at the
+     * last sampled position if there is one
+     **************************************************************************/
+    public double getWaterDensity()
+    {
+        if(oceanField == null)
+            return WATER_DENSITY;
+
+        return oceanSample[OceanField.DENSITY];
     }
 
     /***************************************************************************
@@ -288,6 +345,138 @@ public class Simulator implements Runnable
         return depthReading;
     }
 
+    /***************************************************************************
+     * Tells outside observers how fast the profiler is moving (m/s, positive
+     * is sinking)
+     **************************************************************************/
+    public synchronized double getVelocityReading()
+    {
+        return trueVelocity;
+    }
+
+    /***************************************************************************
+     * Tells outside observers the extension of one buoyancy engine, 0 if it
+     * doesn't exist
+     **************************************************************************/
+    public synchronized double getExtensionReading(int engine)
+    {
+        if(buoyancyEngines == null || engine >= buoyancyEngines.length)
+            return 0;
+
+        return buoyancyEngines[engine].getExtensionCoefficient();
+    }
+
+    /***************************************************************************
+     * Horizontal position readings, meters east and north of the ocean field
+     * origin
+     **************************************************************************/
+    public synchronized double getXReading()
+    {
+        return trueX;
+    }
+
+    public synchronized double getYReading()
+    {
+        return trueY;
+    }
+
+    /***************************************************************************
+     * Setter - places the float horizontally, meters east and north
+     **************************************************************************/
+    public synchronized void setPosition(double x, double y)
+    {
+        this.trueX = x;
+        this.trueY = y;
+    }
+
+    /***************************************************************************
+     * Setter - places the float vertically, for starting a mission away from
+     * the surface
+     **************************************************************************/
+    public synchronized void setState(double depth, double velocity)
+    {
+        this.trueDepth = depth;
+        this.trueVelocity = velocity;
+    }
+
+    /***************************************************************************
+     * Setter - gets a reference to the ocean field. The field is read only
+     * and can be shared by any number of Simulators.
+     **************************************************************************/
+    public synchronized void setOceanField(OceanField oceanField)
+    {
+        this.oceanField = oceanField;
+
+        if(oceanField != null)
+            oceanField.sample(trueX, trueY, Math.max(0, trueDepth),
+                    oceanSample);
+    }
+
+    /***************************************************************************
+     * Appends every physical constant of the vehicle to the given builder as
+     * name=value lines. Used to identify a mission definition, so any new
+     * constant that affects the physics must be added here as well.
+     **************************************************************************/
+    public void appendDefinition(StringBuilder definition)
+    {
+        definition.append("SIMULATOR_VERSION=").append(SIMULATOR_VERSION)
+                .append('\n');
+        definition.append("NUMBER_OF_CYLINDERS=").append(NUMBER_OF_CYLINDERS)
+                .append('\n');
+        definition.append("WATER_DENSITY=").append(WATER_DENSITY)
+                .append('\n');
+        definition.append("GRAVITATIONAL_CONSTANT=")
+                .append(GRAVITATIONAL_CONSTANT).append('\n');
+        definition.append("INSTRUMENT_COMPARTMENT_MASS=")
+                .append(INSTRUMENT_COMPARTMENT_MASS).append('\n');
+        definition.append("BUOYANCY_ENGINE_MASS_EMPTY=")
+                .append(BUOYANCY_ENGINE_MASS_EMPTY).append('\n');
+        definition.append("INSTRUMENT_BAY_OD=").append(INSTRUMENT_BAY_OD)
+                .append('\n');
+        definition.append("INSTRUMENT_BAY_LENGTH=")
+                .append(INSTRUMENT_BAY_LENGTH).append('\n');
+        definition.append("BUOYANCY_ENGINE_OD=").append(BUOYANCY_ENGINE_OD)
+                .append('\n');
+        definition.append("BUOYANCY_ENGINE_ID=").append(BUOYANCY_ENGINE_ID)
+                .append('\n');
+        definition.append("BUOYANCY_ENGINE_LENGTH=")
+                .append(BUOYANCY_ENGINE_LENGTH).append('\n');
+        definition.append("BUOYANCY_ENGINE_PISTON_LENGTH=")
+                .append(BUOYANCY_ENGINE_PISTON_LENGTH).append('\n');
+
+        //Where the float starts and the water it's in
+        synchronized(this)
+        {
+            definition.append("X=").append(trueX).append('\n');
+            definition.append("Y=").append(trueY).append('\n');
+
+            if(oceanField == null)
+                definition.append("OCEAN_FIELD=none\n");
+            else
+                oceanField.appendDefinition(definition);
+        }
+    }
+
+    /***************************************************************************
+     * Gets the physical constants as an array, in the order of
+     * SensitivitySimulator.PARAMETER_NAMES
+     **************************************************************************/
+    public double[] getParameters()
+    {
+        return new double[] {
+                WATER_DENSITY,
+                GRAVITATIONAL_CONSTANT,
+                INSTRUMENT_COMPARTMENT_MASS,
+                BUOYANCY_ENGINE_MASS_EMPTY,
+                INSTRUMENT_BAY_OD,
+                INSTRUMENT_BAY_LENGTH,
+                BUOYANCY_ENGINE_OD,
+                BUOYANCY_ENGINE_ID,
+                BUOYANCY_ENGINE_LENGTH,
+                BUOYANCY_ENGINE_PISTON_LENGTH
+        };
+    }
+
     /***************************************************************************
      * Setter - gets a reference to the buoyancy engine array.
      *
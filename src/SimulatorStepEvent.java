@@ -0,0 +1,33 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/***************************************************************************
+ * Simulator Step Event
+ *
+ * Flight Recorder event covering one Simulator.update() call. Disabled by
+ * default, enable it with jellyfish.jfc.
+ **************************************************************************/
+@Name("jellyfish.SimulatorStep")
+@Label("Simulator Step")
+@Category("Jellyfish")
+@Description("One physics update of the Simulator")
+@Enabled(false)
+@StackTrace(false)
+public class SimulatorStepEvent extends jdk.jfr.Event
+{
+    @Label("Elapsed Time (ms)")
+    double elapsedTime;
+
+    @Label("Depth (m)")
+    double depth;
+
+    @Label("Velocity (m/s)")
+    double velocity;
+
+    @Label("Acceleration (m/s^2)")
+    double acceleration;
+}
@@ -0,0 +1,203 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+
+/***************************************************************************
+ * Telemetry Client Class
+ *
+ * Decodes the TelemetryServer stream into a table of float states. The
+ * state array is reused, applying a frame doesn't allocate.
+ *
+ * Usage: java TelemetryClient [float index to watch]
+ **************************************************************************/
+public class TelemetryClient
+{
+    //Instance Variables
+    private int[] state;
+    private int floats;
+    private long tick;
+
+    private byte[] frame;
+    private int position;
+
+    /***************************************************************************
+     * Telemetry Client Constructor
+     **************************************************************************/
+    public TelemetryClient()
+    {
+        this.state = new int[0];
+        this.frame = new byte[4096];
+    }
+
+    /***************************************************************************
+     * readFrame
+     *
+     * Reads and applies the next frame, returns its size in bytes
+     **************************************************************************/
+    public int readFrame(DataInputStream input) throws IOException
+    {
+        int length = input.readInt();
+
+        if(length > frame.length)
+            frame = new byte[Math.max(length, frame.length * 2)];
+
+        input.readFully(frame, 0, length);
+
+        this.position = 0;
+
+        byte type = frame[position++];
+        this.tick = getVarint();
+        this.floats = (int) getVarint();
+
+        if(state.length < floats * TelemetryServer.FIELDS)
+        {
+            state = Arrays.copyOf(state, Math.max(
+                    floats * TelemetryServer.FIELDS, state.length * 2));
+        }
+
+        //Key frames hold changes from zero
+        if(type == TelemetryServer.FRAME_KEY)
+            Arrays.fill(state, 0);
+
+        int changed = (int) getVarint();
+        int index = -1;
+
+        for(int i = 0; i < changed; i++)
+        {
+            index += (int) getVarint() + 1;
+
+            int mask = frame[position++] & 0xFF;
+            int base = index * TelemetryServer.FIELDS;
+
+            for(int field = 0; field < TelemetryServer.FIELDS; field++)
+            {
+                if((mask & (1 << field)) != 0)
+                {
+                    int zigzag = (int) getVarint();
+                    state[base + field] += (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+            }
+        }
+
+        return length + 4;
+    }
+
+    /***************************************************************************
+     * getVarint
+     **************************************************************************/
+    private long getVarint()
+    {
+        long value = 0;
+        int shift = 0;
+
+        while(true)
+        {
+            byte b = frame[position++];
+            value |= (long) (b & 0x7F) << shift;
+
+            if((b & 0x80) == 0)
+                return value;
+
+            shift += 7;
+        }
+    }
+
+    /***************************************************************************
+     * Getters - values converted back from fixed point
+     **************************************************************************/
+    public long getTick()
+    {
+        return this.tick;
+    }
+
+    public int getFloatCount()
+    {
+        return this.floats;
+    }
+
+    public double getDepth(int floatIndex)
+    {
+        return field(floatIndex, TelemetryServer.FIELD_DEPTH) / 1000.0;
+    }
+
+    public double getVelocity(int floatIndex)
+    {
+        return field(floatIndex, TelemetryServer.FIELD_VELOCITY) / 1000.0;
+    }
+
+    public double getDensity(int floatIndex)
+    {
+        return field(floatIndex, TelemetryServer.FIELD_DENSITY) / 100.0;
+    }
+
+    public double getExtension(int floatIndex, int engine)
+    {
+        return field(floatIndex, TelemetryServer.FIELD_EXTENSION + engine)
+                / 1000.0;
+    }
+
+    public int getMode(int floatIndex)
+    {
+        return field(floatIndex, TelemetryServer.FIELD_MODE);
+    }
+
+    private int field(int floatIndex, int field)
+    {
+        return state[floatIndex * TelemetryServer.FIELDS + field];
+    }
+
+
+    /***************************************************************************
+     * System main
+     **************************************************************************/
+    public static void main(String[] args) throws IOException
+    {
+        int watched = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+
+        TelemetryClient client = new TelemetryClient();
+
+        try(Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                TelemetryServer.DEFAULT_PORT))
+        {
+            DataInputStream input = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream()));
+
+            long bytes = 0;
+            long lastReport = System.nanoTime();
+
+            while(true)
+            {
+                bytes += client.readFrame(input);
+
+                long now = System.nanoTime();
+
+                if(now - lastReport >= 1_000_000_000L)
+                {
+                    System.out.println("Tick: " + client.getTick()
+                            + " | Floats: " + client.getFloatCount()
+                            + " | Bytes/s: " + bytes * 1_000_000_000L
+                            / (now - lastReport));
+
+                    if(watched < client.getFloatCount())
+                    {
+                        System.out.println("Float " + watched
+                                + " | Depth: " + client.getDepth(watched)
+                                + " | Velocity: "
+                                + client.getVelocity(watched)
+                                + " | Density: " + client.getDensity(watched)
+                                + " | Extension: "
+                                + client.getExtension(watched, 0)
+                                + " | Mode: " + Control.MODE_NAMES[
+                                client.getMode(watched)]);
+                    }
+
+                    bytes = 0;
+                    lastReport = now;
+                }
+            }
+        }
+    }
+}
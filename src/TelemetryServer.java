@@ -0,0 +1,613 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/***************************************************************************
+ * Telemetry Server Class
+ *
+ * Publishes the live state of every registered float over a plain TCP
+ * framed protocol on the loopback interface. State is sampled once per
+ * tick, so any number of Simulator updates between ticks coalesce into one
+ * update, and only the fields that changed since the previous tick are
+ * sent. One frame is encoded per tick and shared by every client.
+ *
+ * Frame layout:
+ *   int    payload length (big endian)
+ *   byte   FRAME_KEY or FRAME_DELTA
+ *   varint tick
+ *   varint number of registered floats
+ *   varint number of floats in this frame
+ *   per float:
+ *     varint gap to the previous float index in this frame, minus one
+ *     byte   bit mask of the fields that follow
+ *     zigzag varint change of each field, in field order
+ *
+ * Field values are fixed point integers (see FIELD_*). In a key frame the
+ * changes are relative to zero, so it carries the full state. New clients
+ * and clients that fell behind get a key frame, everyone else deltas.
+ **************************************************************************/
+public class TelemetryServer implements Runnable
+{
+    //Constants
+    public final boolean DEBUG = true;
+
+    public static final int DEFAULT_PORT = 47001;
+
+    public static final byte FRAME_KEY = 0;
+    public static final byte FRAME_DELTA = 1;
+
+    public static final int NUMBER_OF_ENGINES = 3;
+
+    public static final int FIELD_DEPTH = 0; //mm
+    public static final int FIELD_VELOCITY = 1; //mm/s
+    public static final int FIELD_DENSITY = 2; //0.01 kg/m^3
+    public static final int FIELD_EXTENSION = 3; //0.001, one per engine
+    public static final int FIELD_MODE = FIELD_EXTENSION + NUMBER_OF_ENGINES;
+    public static final int FIELDS = FIELD_MODE + 1;
+
+    //Instance Variables
+    private ServerSocketChannel server;
+    private Selector selector;
+    private long tickNanos;
+
+    private ArrayList<Simulator> simulators;
+    private ArrayList<Control> controls;
+
+    private int[] current;
+    private int[] previous;
+    private int[] zero;
+
+    private FrameBuffer deltaFrame;
+    private FrameBuffer keyFrame;
+
+    private ArrayList<Client> clients;
+    private ByteBuffer readScratch;
+
+    private long tick;
+    private long bytesSent;
+    private volatile boolean running;
+
+    /***************************************************************************
+     * Client Class - one connection and whatever it hasn't received yet
+     **************************************************************************/
+    private static class Client
+    {
+        SocketChannel channel;
+        ByteBuffer pending;
+        boolean needsKeyFrame = true;
+    }
+
+    /***************************************************************************
+     * Frame Buffer Class - growable byte array with varint encoding
+     **************************************************************************/
+    static class FrameBuffer
+    {
+        byte[] bytes = new byte[4096];
+        int length;
+
+        void reset()
+        {
+            //Room for the length prefix
+            length = 4;
+        }
+
+        void putByte(int value)
+        {
+            if(length == bytes.length)
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+
+            bytes[length++] = (byte) value;
+        }
+
+        void putVarint(long value)
+        {
+            while((value & ~0x7FL) != 0)
+            {
+                putByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+
+            putByte((int) value);
+        }
+
+        void putZigzag(int value)
+        {
+            putVarint(((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+        }
+
+        void finish()
+        {
+            int payload = length - 4;
+
+            bytes[0] = (byte) (payload >>> 24);
+            bytes[1] = (byte) (payload >>> 16);
+            bytes[2] = (byte) (payload >>> 8);
+            bytes[3] = (byte) payload;
+        }
+    }
+
+    /***************************************************************************
+     * Telemetry Server Constructor
+     *
+     * Listens on the loopback interface and publishes rate times a second
+     **************************************************************************/
+    public TelemetryServer(int port, double rate) throws IOException
+    {
+        this.server = ServerSocketChannel.open();
+        this.server.bind(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), port));
+        this.server.configureBlocking(false);
+
+        this.selector = Selector.open();
+        this.server.register(selector, SelectionKey.OP_ACCEPT);
+
+        this.tickNanos = (long) (1_000_000_000L / rate);
+
+        this.simulators = new ArrayList<>();
+        this.controls = new ArrayList<>();
+
+        this.current = new int[0];
+        this.previous = new int[0];
+        this.zero = new int[0];
+
+        this.deltaFrame = new FrameBuffer();
+        this.keyFrame = new FrameBuffer();
+
+        this.clients = new ArrayList<>();
+        this.readScratch = ByteBuffer.allocate(256);
+    }
+
+    /***************************************************************************
+     * register
+     *
+     * Adds a float to the stream and returns its index. control may be null,
+     * the mode is then always Control.MODE_IDLE.
+     **************************************************************************/
+    public synchronized int register(Simulator simulator, Control control)
+    {
+        simulators.add(simulator);
+        controls.add(control);
+
+        return simulators.size() - 1;
+    }
+
+    /***************************************************************************
+     * run
+     *
+     * Accepts clients and publishes one frame per tick until close()
+     **************************************************************************/
+    public void run()
+    {
+        this.running = true;
+
+        long nextTick = System.nanoTime();
+
+        while(running)
+        {
+            try
+            {
+                long wait = (nextTick - System.nanoTime()) / 1_000_000;
+
+                if(wait > 0)
+                    selector.select(wait);
+                else
+                    selector.selectNow();
+
+                handleKeys();
+            }
+            catch(IOException e)
+            {
+                e.printStackTrace();
+            }
+
+            long now = System.nanoTime();
+
+            if(now - nextTick >= 0)
+            {
+                publish();
+
+                nextTick += tickNanos;
+
+                //Fell more than a tick behind, don't try to catch up
+                if(now - nextTick >= 0)
+                    nextTick = now + tickNanos;
+            }
+        }
+    }
+
+    /***************************************************************************
+     * handleKeys
+     **************************************************************************/
+    private void handleKeys() throws IOException
+    {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+        while(keys.hasNext())
+        {
+            SelectionKey key = keys.next();
+            keys.remove();
+
+            if(!key.isValid())
+                continue;
+
+            if(key.isAcceptable())
+            {
+                SocketChannel channel = server.accept();
+
+                if(channel == null)
+                    continue;
+
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+
+                Client client = new Client();
+                client.channel = channel;
+                channel.register(selector, SelectionKey.OP_READ, client);
+                clients.add(client);
+
+                if(DEBUG)
+                    System.out.println("Telemetry: client connected, "
+                            + clients.size() + " total");
+                continue;
+            }
+
+            Client client = (Client) key.attachment();
+
+            if(key.isReadable())
+            {
+                //Clients don't send anything, a read only detects hang ups
+                readScratch.clear();
+
+                try
+                {
+                    if(client.channel.read(readScratch) < 0)
+                    {
+                        disconnect(client);
+                        continue;
+                    }
+                }
+                catch(IOException e)
+                {
+                    disconnect(client);
+                    continue;
+                }
+            }
+
+            if(key.isValid() && key.isWritable())
+            {
+                flushPending(client);
+            }
+        }
+    }
+
+    /***************************************************************************
+     * publish
+     *
+     * Samples every float, encodes the delta frame (and a key frame if any
+     * client needs one) and sends them
+     **************************************************************************/
+    private void publish()
+    {
+        int floats = snapshot();
+
+        encode(deltaFrame, FRAME_DELTA, previous, floats);
+
+        boolean keyFrameEncoded = false;
+
+        for(int i = clients.size() - 1; i >= 0; i--)
+        {
+            Client client = clients.get(i);
+
+            //Still sending an older frame, resynchronize later
+            if(client.pending != null && client.pending.hasRemaining())
+            {
+                client.needsKeyFrame = true;
+                continue;
+            }
+
+            FrameBuffer frame = deltaFrame;
+
+            if(client.needsKeyFrame)
+            {
+                if(!keyFrameEncoded)
+                {
+                    encode(keyFrame, FRAME_KEY, zero, floats);
+                    keyFrameEncoded = true;
+                }
+
+                frame = keyFrame;
+                client.needsKeyFrame = false;
+            }
+
+            send(client, frame);
+        }
+
+        int[] swap = previous;
+        previous = current;
+        current = swap;
+
+        tick++;
+    }
+
+    /***************************************************************************
+     * snapshot
+     *
+     * Reads every float into current as fixed point fields
+     **************************************************************************/
+    private synchronized int snapshot()
+    {
+        int floats = simulators.size();
+
+        if(current.length < floats * FIELDS)
+        {
+            int size = Math.max(floats * FIELDS, current.length * 2);
+
+            current = Arrays.copyOf(current, size);
+            previous = Arrays.copyOf(previous, size);
+            zero = new int[size];
+        }
+
+        for(int f = 0; f < floats; f++)
+        {
+            Simulator simulator = simulators.get(f);
+            Control control = controls.get(f);
+            int base = f * FIELDS;
+
+            current[base + FIELD_DEPTH] =
+                    (int) Math.round(simulator.getDepthReading() * 1000);
+            current[base + FIELD_VELOCITY] =
+                    (int) Math.round(simulator.getVelocityReading() * 1000);
+            current[base + FIELD_DENSITY] =
+                    (int) Math.round(simulator.getSystemDensity() * 100);
+
+            for(int e = 0; e < NUMBER_OF_ENGINES; e++)
+            {
+                current[base + FIELD_EXTENSION + e] = (int) Math.round(
+                        simulator.getExtensionReading(e) * 1000);
+            }
+
+            current[base + FIELD_MODE] =
+                    (control == null) ? Control.MODE_IDLE : control.getMode();
+        }
+
+        return floats;
+    }
+
+    /***************************************************************************
+     * encode
+     *
+     * Encodes the floats whose fields differ from reference
+     **************************************************************************/
+    private void encode(FrameBuffer frame, byte type, int[] reference,
+                        int floats)
+    {
+        frame.reset();
+        frame.putByte(type);
+        frame.putVarint(tick);
+        frame.putVarint(floats);
+
+        //Count first, so the frame needs no patching
+        int changed = 0;
+
+        for(int f = 0; f < floats; f++)
+        {
+            if(getChangeMask(f, reference) != 0)
+                changed++;
+        }
+
+        frame.putVarint(changed);
+
+        int lastIndex = -1;
+
+        for(int f = 0; f < floats; f++)
+        {
+            int mask = getChangeMask(f, reference);
+
+            if(mask == 0)
+                continue;
+
+            frame.putVarint(f - lastIndex - 1);
+            frame.putByte(mask);
+
+            int base = f * FIELDS;
+
+            for(int field = 0; field < FIELDS; field++)
+            {
+                if((mask & (1 << field)) != 0)
+                {
+                    frame.putZigzag(current[base + field]
+                            - reference[base + field]);
+                }
+            }
+
+            lastIndex = f;
+        }
+
+        frame.finish();
+    }
+
+    /***************************************************************************
+     * getChangeMask
+     **************************************************************************/
+    private int getChangeMask(int floatIndex, int[] reference)
+    {
+        int base = floatIndex * FIELDS;
+        int mask = 0;
+
+        for(int field = 0; field < FIELDS; field++)
+        {
+            if(current[base + field] != reference[base + field])
+                mask |= 1 << field;
+        }
+
+        return mask;
+    }
+
+    /***************************************************************************
+     * send
+     *
+     * Writes without blocking, keeps whatever the socket didn't take
+     **************************************************************************/
+    private void send(Client client, FrameBuffer frame)
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(frame.bytes, 0, frame.length);
+
+        try
+        {
+            bytesSent += client.channel.write(buffer);
+        }
+        catch(IOException e)
+        {
+            disconnect(client);
+            return;
+        }
+
+        if(buffer.hasRemaining())
+        {
+            if(client.pending == null
+                    || client.pending.capacity() < buffer.remaining())
+            {
+                client.pending = ByteBuffer.allocate(Math.max(
+                        buffer.remaining(), frame.bytes.length));
+            }
+
+            client.pending.clear();
+            client.pending.put(buffer);
+            client.pending.flip();
+
+            client.channel.keyFor(selector).interestOps(
+                    SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /***************************************************************************
+     * flushPending
+     **************************************************************************/
+    private void flushPending(Client client)
+    {
+        try
+        {
+            bytesSent += client.channel.write(client.pending);
+        }
+        catch(IOException e)
+        {
+            disconnect(client);
+            return;
+        }
+
+        if(!client.pending.hasRemaining())
+        {
+            client.channel.keyFor(selector).interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /***************************************************************************
+     * disconnect
+     **************************************************************************/
+    private void disconnect(Client client)
+    {
+        clients.remove(client);
+
+        try
+        {
+            client.channel.close();
+        }
+        catch(IOException e)
+        {
+            e.printStackTrace();
+        }
+
+        if(DEBUG)
+            System.out.println("Telemetry: client disconnected, "
+                    + clients.size() + " left");
+    }
+
+    /***************************************************************************
+     * Getters
+     **************************************************************************/
+    public long getTick()
+    {
+        return this.tick;
+    }
+
+    public long getBytesSent()
+    {
+        return this.bytesSent;
+    }
+
+    /***************************************************************************
+     * close
+     **************************************************************************/
+    public void close()
+    {
+        this.running = false;
+        this.selector.wakeup();
+    }
+
+
+    /***************************************************************************
+     * Testing main
+     *
+     * Streams a fleet of floats at 10 Hz. Watch it with TelemetryClient.
+     * Usage: java TelemetryServer [number of floats]
+     **************************************************************************/
+    public static void main(String[] args) throws IOException
+    {
+        int floats = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+
+        TelemetryServer telemetry = new TelemetryServer(DEFAULT_PORT, 10);
+        Simulator[] fleet = new Simulator[floats];
+
+        for(int f = 0; f < floats; f++)
+        {
+            BuoyancyEngine[] engines = new BuoyancyEngine[NUMBER_OF_ENGINES];
+
+            for(int i = 0; i < engines.length; i++)
+            {
+                engines[i] = new BuoyancyEngine();
+
+                //A spread of slightly heavy floats, so most of them dive
+                for(int j = 0; j < f % 20; j++)
+                {
+                    engines[i].sink();
+                }
+            }
+
+            fleet[f] = new Simulator();
+            fleet[f].setBuoyancyEngines(engines);
+
+            telemetry.register(fleet[f], null);
+        }
+
+        new Thread(telemetry).start();
+
+        //Step the whole fleet in real time
+        while(true)
+        {
+            long startTime = System.nanoTime();
+
+            for(int f = 0; f < floats; f++)
+            {
+                fleet[f].update(100);
+            }
+
+            long sleep = 100 - (System.nanoTime() - startTime) / 1_000_000;
+
+            try
+            {
+                if(sleep > 0)
+                    Thread.sleep(sleep);
+            }
+            catch(InterruptedException e)
+            {}
+        }
+    }
+}
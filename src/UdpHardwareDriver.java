@@ -0,0 +1,275 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/***************************************************************************
+ * UDP Hardware Driver Class
+ *
+ * Talks to an external device process over loopback UDP. Every request is
+ * answered by exactly one response frame carrying the same sequence number.
+ *
+ * Frame layout (FRAME_BYTES, big endian):
+ *   0  int    magic
+ *   4  int    sequence number
+ *   8  int    command
+ *   12 int    engine index
+ *   16 double value
+ *   24 long   device timestamp (nanoseconds, informational)
+ *
+ * Both frame buffers are direct and allocated once. Responses are polled
+ * without blocking until the timeout, which keeps the round trip short.
+ * Round trip latency and jitter are measured on every exchange.
+ **************************************************************************/
+public class UdpHardwareDriver implements HardwareInterface
+{
+    //Constants
+    public final boolean DEBUG = true;
+
+    public static final int DEFAULT_PORT = 47000;
+
+    public static final int FRAME_BYTES = 32;
+    public static final int FRAME_MAGIC = 0x4A465957; //"JFYW"
+
+    public static final int COMMAND_READ_DEPTH = 1;
+    public static final int COMMAND_SET_EXTENSION = 2;
+
+    private final long TIMEOUT_NANOS = 50_000_000; //50 ms
+
+    //Instance Variables
+    private DatagramChannel channel;
+
+    private ByteBuffer sendBuffer;
+    private ByteBuffer receiveBuffer;
+
+    private int sequence;
+    private long deadlineNanos;
+
+    private double lastDepth;
+
+    //Latency statistics, all in nanoseconds
+    private long roundTrips;
+    private long timeouts;
+    private long deadlineMisses;
+    private long minLatency;
+    private long maxLatency;
+    private double latencyMean;
+    private double latencyM2; //sum of squared differences from the mean
+
+    /***************************************************************************
+     * UDP Hardware Driver Constructor
+     *
+     * Connects to the device on the loopback interface. Round trips longer
+     * than deadlineNanos are counted as deadline misses.
+     **************************************************************************/
+    public UdpHardwareDriver(int port, long deadlineNanos) throws IOException
+    {
+        this.channel = DatagramChannel.open();
+        this.channel.connect(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), port));
+        this.channel.configureBlocking(false);
+
+        this.sendBuffer = ByteBuffer.allocateDirect(FRAME_BYTES);
+        this.receiveBuffer = ByteBuffer.allocateDirect(FRAME_BYTES);
+
+        this.sequence = 0;
+        this.deadlineNanos = deadlineNanos;
+
+        this.resetStatistics();
+    }
+
+    /***************************************************************************
+     * readDepth
+     *
+     * Returns the last good depth if the device doesn't answer in time
+     **************************************************************************/
+    public synchronized double readDepth()
+    {
+        if(exchange(COMMAND_READ_DEPTH, 0, 0.0))
+        {
+            this.lastDepth = receiveBuffer.getDouble(16);
+        }
+
+        return this.lastDepth;
+    }
+
+    /***************************************************************************
+     * setExtension
+     *
+     * Returns the requested extension if the device doesn't answer in time
+     **************************************************************************/
+    public synchronized double setExtension(int engine,
+                                            double extensionCoefficient)
+    {
+        if(exchange(COMMAND_SET_EXTENSION, engine, extensionCoefficient))
+        {
+            return receiveBuffer.getDouble(16);
+        }
+
+        return extensionCoefficient;
+    }
+
+    /***************************************************************************
+     * exchange
+     *
+     * Sends one request and spins until the matching response arrives or the
+     * timeout expires. Returns true if the response is in receiveBuffer.
+     **************************************************************************/
+    private boolean exchange(int command, int engine, double value)
+    {
+        this.sequence++;
+
+        sendBuffer.clear();
+        sendBuffer.putInt(FRAME_MAGIC);
+        sendBuffer.putInt(sequence);
+        sendBuffer.putInt(command);
+        sendBuffer.putInt(engine);
+        sendBuffer.putDouble(value);
+        sendBuffer.putLong(0);
+        sendBuffer.flip();
+
+        long startTime = System.nanoTime();
+
+        try
+        {
+            channel.write(sendBuffer);
+
+            while(System.nanoTime() - startTime < TIMEOUT_NANOS)
+            {
+                receiveBuffer.clear();
+
+                if(channel.read(receiveBuffer) == FRAME_BYTES
+                        && receiveBuffer.getInt(0) == FRAME_MAGIC
+                        && receiveBuffer.getInt(4) == sequence)
+                {
+                    recordLatency(System.nanoTime() - startTime);
+                    return true;
+                }
+
+                Thread.onSpinWait();
+            }
+        }
+        catch(IOException e)
+        {
+            e.printStackTrace();
+        }
+
+        this.timeouts++;
+
+        if(DEBUG)
+            System.out.println("Hardware Driver Error: no response to command "
+                    + command);
+
+        return false;
+    }
+
+    /***************************************************************************
+     * recordLatency
+     **************************************************************************/
+    private void recordLatency(long latency)
+    {
+        this.roundTrips++;
+
+        if(latency < minLatency)
+            minLatency = latency;
+        if(latency > maxLatency)
+            maxLatency = latency;
+        if(latency > deadlineNanos)
+            deadlineMisses++;
+
+        //Welford, same as the RecorderAnalyzer statistics
+        double delta = latency - latencyMean;
+        latencyMean += delta / roundTrips;
+        latencyM2 += delta * (latency - latencyMean);
+    }
+
+    /***************************************************************************
+     * resetStatistics
+     **************************************************************************/
+    public synchronized void resetStatistics()
+    {
+        this.roundTrips = 0;
+        this.timeouts = 0;
+        this.deadlineMisses = 0;
+        this.minLatency = Long.MAX_VALUE;
+        this.maxLatency = 0;
+        this.latencyMean = 0;
+        this.latencyM2 = 0;
+    }
+
+    /***************************************************************************
+     * Getters - latency statistics in nanoseconds
+     **************************************************************************/
+    public synchronized long getRoundTrips()
+    {
+        return this.roundTrips;
+    }
+
+    public synchronized long getTimeouts()
+    {
+        return this.timeouts;
+    }
+
+    public synchronized long getDeadlineMisses()
+    {
+        return this.deadlineMisses;
+    }
+
+    public synchronized long getMinLatency()
+    {
+        return this.roundTrips == 0 ? 0 : this.minLatency;
+    }
+
+    public synchronized long getMaxLatency()
+    {
+        return this.maxLatency;
+    }
+
+    public synchronized double getMeanLatency()
+    {
+        return this.latencyMean;
+    }
+
+    /***************************************************************************
+     * getJitter
+     *
+     * Standard deviation of the round trip latency
+     **************************************************************************/
+    public synchronized double getJitter()
+    {
+        if(this.roundTrips == 0)
+            return 0;
+
+        return Math.sqrt(latencyM2 / roundTrips);
+    }
+
+    /***************************************************************************
+     * getLatencyReport
+     **************************************************************************/
+    public synchronized String getLatencyReport()
+    {
+        return "Round Trips: " + roundTrips
+                + " | Timeouts: " + timeouts
+                + " | Deadline Misses: " + deadlineMisses
+                + "\nLatency (us) Min: " + getMinLatency() / 1000.0
+                + " | Mean: " + getMeanLatency() / 1000.0
+                + " | Max: " + maxLatency / 1000.0
+                + " | Jitter: " + getJitter() / 1000.0;
+    }
+
+    /***************************************************************************
+     * close
+     **************************************************************************/
+    public synchronized void close()
+    {
+        try
+        {
+            channel.close();
+        }
+        catch(IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+}